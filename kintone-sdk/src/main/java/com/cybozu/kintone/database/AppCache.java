@@ -0,0 +1,372 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A cache of the application information returned by
+ * {@link Connection#getApp(long)} and {@link Connection#getApps}.
+ *
+ * The apps are cached by id, by code and by the query parameters of the
+ * search. An entry younger than the time to live is returned as is. An entry
+ * older than that but still within the stale window is returned as well,
+ * while it is refreshed in the background; older entries are fetched again.
+ * The number of the entries is bounded, and the least recently used one is
+ * evicted first. The apps and the lists are copied in and out, so changing
+ * a result does not change the cached one. Set the cache to a connection with
+ * {@link Connection#setAppCache(AppCache)}.
+ *
+ */
+public class AppCache {
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000L;
+    public static final long DEFAULT_STALE_MILLIS = 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final String ID_PREFIX = "id:";
+    private static final String CODE_PREFIX = "code:";
+    private static final String QUERY_PREFIX = "apps:";
+
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final Map<String, Entry> entries;
+    private final Set<String> refreshing = new HashSet<String>();
+
+    private long hitCount;
+    private long staleHitCount;
+    private long missCount;
+
+    /**
+     * Fetches a value from kintone.
+     */
+    interface Loader<T> {
+        public T load() throws DBException;
+    }
+
+    /**
+     * A cached value.
+     */
+    private static class Entry {
+        private final Object value;
+        private final long loadedAt;
+
+        private Entry(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Constructor
+     */
+    public AppCache() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_STALE_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ttlMillis
+     *            the time to live of an entry in milliseconds
+     * @param staleMillis
+     *            how long an expired entry is still returned while it is
+     *            refreshed, in milliseconds (0 means never)
+     */
+    public AppCache(long ttlMillis, long staleMillis) {
+        this(ttlMillis, staleMillis, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ttlMillis
+     *            the time to live of an entry in milliseconds
+     * @param staleMillis
+     *            how long an expired entry is still returned while it is
+     *            refreshed, in milliseconds (0 means never)
+     * @param maxEntries
+     *            the maximum number of the entries, the least recently used
+     *            one is evicted first
+     */
+    public AppCache(long ttlMillis, long staleMillis, final int maxEntries) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be positive");
+        }
+        if (staleMillis < 0) {
+            throw new IllegalArgumentException("staleMillis must not be negative");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Drops the app from the cache, along with all the cached searches.
+     *
+     * @param appId
+     *            app id
+     */
+    public synchronized void invalidate(long appId) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> entry = it.next();
+            if (entry.getKey().startsWith(QUERY_PREFIX)) {
+                it.remove();
+            } else {
+                Object value = entry.getValue().value;
+                if (value instanceof AppDto && ((AppDto) value).getAppId() == appId) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all the entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of the entries, counting an app once by id and once by
+     * code, and including the expired ones not yet evicted.
+     *
+     * @return the number of the entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of the lookups served by a fresh entry
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of the lookups served by a stale entry
+     */
+    public synchronized long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    /**
+     * @return the number of the lookups fetched from kintone
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the app by id.
+     */
+    AppDto getApp(long id, Loader<AppDto> loader, Executor executor) throws DBException {
+        return get(ID_PREFIX + id, loader, executor);
+    }
+
+    /**
+     * Gets the app by code.
+     */
+    AppDto getAppByCode(String code, Loader<AppDto> loader, Executor executor) throws DBException {
+        return get(CODE_PREFIX + code, loader, executor);
+    }
+
+    /**
+     * Gets the apps by the query parameters of the search.
+     */
+    List<AppDto> getApps(String query, Loader<List<AppDto>> loader, Executor executor)
+            throws DBException {
+        return get(QUERY_PREFIX + query, loader, executor);
+    }
+
+    /**
+     * Gets the value, loading it if it is missing or too old.
+     *
+     * @param key
+     *            the cache key
+     * @param loader
+     *            the loader of the value
+     * @param executor
+     *            the executor which refreshes the stale entries
+     * @return the value
+     * @throws DBException
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T get(final String key, final Loader<T> loader, Executor executor)
+            throws DBException {
+        Entry entry;
+        boolean refresh = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null) {
+                long age = System.currentTimeMillis() - entry.loadedAt;
+                if (age < ttlMillis) {
+                    hitCount++;
+                    return (T) copy(entry.value);
+                }
+                if (age < ttlMillis + staleMillis) {
+                    staleHitCount++;
+                    refresh = refreshing.add(key);
+                } else {
+                    entries.remove(key);
+                    entry = null;
+                }
+            }
+            if (entry == null) {
+                missCount++;
+            }
+        }
+
+        if (entry == null) {
+            T value = loader.load();
+            put(key, value);
+            return (T) copy(value);
+        }
+
+        if (refresh) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            put(key, loader.load());
+                        } catch (DBException e) {
+                            // keep the stale entry until the next attempt
+                        } finally {
+                            synchronized (AppCache.this) {
+                                refreshing.remove(key);
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    refreshing.remove(key);
+                }
+            }
+        }
+        return (T) copy(entry.value);
+    }
+
+    /**
+     * Stores the value, indexing the apps by id and code as well.
+     *
+     * @param key
+     *            the cache key
+     * @param value
+     *            an app or a list of apps
+     */
+    private synchronized void put(String key, Object value) {
+        long now = System.currentTimeMillis();
+        value = copy(value);
+        entries.put(key, new Entry(value, now));
+        if (value instanceof AppDto) {
+            index((AppDto) value, now);
+        } else if (value instanceof List) {
+            for (Object app : (List<?>) value) {
+                index((AppDto) app, now);
+            }
+        }
+    }
+
+    /**
+     * Stores the app by id and code.
+     *
+     * @param app
+     *            the app
+     * @param now
+     *            the current time
+     */
+    private void index(AppDto app, long now) {
+        if (app == null) {
+            return;
+        }
+        Entry entry = new Entry(app, now);
+        entries.put(ID_PREFIX + app.getAppId(), entry);
+        if (app.getCode() != null && app.getCode().length() > 0) {
+            entries.put(CODE_PREFIX + app.getCode(), entry);
+        }
+    }
+
+    /**
+     * Copies an app or a list of apps.
+     *
+     * @param value
+     *            an app or a list of apps
+     * @return the copy
+     */
+    private static Object copy(Object value) {
+        if (value instanceof AppDto) {
+            return copy((AppDto) value);
+        }
+        if (value instanceof List) {
+            List<AppDto> apps = new ArrayList<AppDto>();
+            for (Object app : (List<?>) value) {
+                apps.add(copy((AppDto) app));
+            }
+            return apps;
+        }
+        return value;
+    }
+
+    private static AppDto copy(AppDto app) {
+        if (app == null) {
+            return null;
+        }
+        AppDto copy = new AppDto();
+        copy.setAppId(app.getAppId());
+        copy.setCode(app.getCode());
+        copy.setName(app.getName());
+        copy.setDescription(app.getDescription());
+        copy.setSpaceId(app.getSpaceId());
+        copy.setThreadId(app.getThreadId());
+        copy.setCreator(copy(app.getCreator()));
+        copy.setCreatedAt(app.getCreatedAt());
+        copy.setModifier(copy(app.getModifier()));
+        copy.setModifiedAt(app.getModifiedAt());
+        return copy;
+    }
+
+    private static UserDto copy(UserDto user) {
+        if (user == null) {
+            return null;
+        }
+        UserDto copy = new UserDto();
+        copy.setCode(user.getCode());
+        copy.setName(user.getName());
+        return copy;
+    }
+}
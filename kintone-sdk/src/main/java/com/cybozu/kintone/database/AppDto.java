@@ -87,6 +87,75 @@ public class AppDto {
 	 */
 	public String getModifiedAt() {
 		return modifiedAt;
-	}	
-    
+	}
+	/**
+	 * @param appId
+	 *            the appId
+	 */
+	void setAppId(long appId) {
+		this.appId = appId;
+	}
+	/**
+	 * @param code
+	 *            the code
+	 */
+	void setCode(String code) {
+		this.code = code;
+	}
+	/**
+	 * @param name
+	 *            the name
+	 */
+	void setName(String name) {
+		this.name = name;
+	}
+	/**
+	 * @param description
+	 *            the description
+	 */
+	void setDescription(String description) {
+		this.description = description;
+	}
+	/**
+	 * @param spaceId
+	 *            the spaceId
+	 */
+	void setSpaceId(long spaceId) {
+		this.spaceId = spaceId;
+	}
+	/**
+	 * @param threadId
+	 *            the threadId
+	 */
+	void setThreadId(long threadId) {
+		this.threadId = threadId;
+	}
+	/**
+	 * @param creator
+	 *            the creator
+	 */
+	void setCreator(UserDto creator) {
+		this.creator = creator;
+	}
+	/**
+	 * @param createdAt
+	 *            the createdAt
+	 */
+	void setCreatedAt(String createdAt) {
+		this.createdAt = createdAt;
+	}
+	/**
+	 * @param modifier
+	 *            the modifier
+	 */
+	void setModifier(UserDto modifier) {
+		this.modifier = modifier;
+	}
+	/**
+	 * @param modifiedAt
+	 *            the modifiedAt
+	 */
+	void setModifiedAt(String modifiedAt) {
+		this.modifiedAt = modifiedAt;
+	}
 }
@@ -0,0 +1,363 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import bolts.Task;
+
+/**
+ * Asynchronous facade of {@link Connection}. Each method runs the blocking
+ * call on the executor and returns a task which completes with the result or
+ * faults with the DBException thrown.
+ * 
+ * The number of the requests in flight is bounded by the executor, so pass an
+ * executor sized to the concurrent request limit of kintone when many
+ * requests are issued at once.
+ *
+ */
+public class AsyncConnection {
+
+    private final Connection connection;
+    private final Executor executor;
+
+    /**
+     * Constructor. The requests run on the background executor of bolts.
+     * 
+     * @param connection
+     *            the connection object
+     */
+    public AsyncConnection(Connection connection) {
+        this(connection, Task.BACKGROUND_EXECUTOR);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param connection
+     *            the connection object
+     * @param executor
+     *            the executor which runs the requests
+     */
+    public AsyncConnection(Connection connection, Executor executor) {
+        if (connection == null || executor == null) {
+            throw new IllegalArgumentException("connection and executor must not be null");
+        }
+        this.connection = connection;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the connection object
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return the executor which runs the requests
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    private <T> Task<T> call(Callable<T> callable) {
+        return Task.call(callable, executor);
+    }
+
+    /**
+     * Selects the records from kintone using a query string.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @return the task of the ResultSet object
+     */
+    public Task<ResultSet> select(final long app, final String query) {
+        return call(new Callable<ResultSet>() {
+            @Override
+            public ResultSet call() throws Exception {
+                return connection.select(app, query);
+            }
+        });
+    }
+
+    /**
+     * Selects the records from kintone using a query string.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @return the task of the ResultSet object
+     */
+    public Task<ResultSet> select(final long app, final String query, final String[] columns) {
+        return call(new Callable<ResultSet>() {
+            @Override
+            public ResultSet call() throws Exception {
+                return connection.select(app, query, columns);
+            }
+        });
+    }
+
+    /**
+     * Inserts a new record.
+     * 
+     * @param app
+     *            application id
+     * @param record
+     *            The Record object to be inserted
+     * @return the task of the id number of inserted record
+     */
+    public Task<Long> insert(final long app, final Record record) {
+        return call(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return connection.insert(app, record);
+            }
+        });
+    }
+
+    /**
+     * Inserts new records.
+     * 
+     * @param app
+     *            application id
+     * @param records
+     *            The array of Record objects to be inserted
+     * @return the task of the list of inserted id number
+     */
+    public Task<List<Long>> insert(final long app, final List<Record> records) {
+        return call(new Callable<List<Long>>() {
+            @Override
+            public List<Long> call() throws Exception {
+                return connection.insert(app, records);
+            }
+        });
+    }
+
+    /**
+     * Updates a record.
+     * 
+     * @param app
+     *            application id
+     * @param record
+     *            updated record object
+     * @return the task of the new revision number
+     */
+    public Task<Long> updateRecord(final long app, final Record record) {
+        return call(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return connection.updateRecord(app, record);
+            }
+        });
+    }
+
+    /**
+     * Updates records.
+     * 
+     * @param app
+     *            application id
+     * @param records
+     *            an array of the updated record object
+     * @return the task
+     */
+    public Task<Void> updateRecords(final long app, final List<Record> records) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                connection.updateRecords(app, records);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Deletes a record.
+     * 
+     * @param app
+     *            application id
+     * @param id
+     *            record number to be deleted
+     * @return the task
+     */
+    public Task<Void> delete(final long app, final long id) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                connection.delete(app, id);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Deletes records.
+     * 
+     * @param app
+     *            application id
+     * @param ids
+     *            a list of record numbers to be deleted
+     * @return the task
+     */
+    public Task<Void> delete(final long app, final List<Long> ids) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                connection.delete(app, ids);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Uploads a file with the content type.
+     * 
+     * @param file
+     *            file object to be uploaded
+     * @param contentType
+     *            content type
+     * @return the task of the file key
+     */
+    public Task<String> uploadFile(final File file, final String contentType) {
+        return call(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return connection.uploadFile(file, contentType);
+            }
+        });
+    }
+
+    /**
+     * Uploads a file from input stream.
+     * 
+     * @param contentType
+     *            content type
+     * @param file
+     *            file stream to be uploaded
+     * @param fileName
+     *            upload file name
+     * @return the task of the file key
+     */
+    public Task<String> uploadFile(final String contentType, final InputStream file, final String fileName) {
+        return call(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return connection.uploadFile(contentType, file, fileName);
+            }
+        });
+    }
+
+    /**
+     * Downloads a file.
+     * 
+     * @param fileKey
+     *            file key
+     * @return the task of the file object
+     */
+    public Task<File> downloadFile(final String fileKey) {
+        return call(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                return connection.downloadFile(fileKey);
+            }
+        });
+    }
+
+    /**
+     * Returns the app information object
+     * 
+     * @param id
+     *            app id
+     * @return the task of the app object
+     */
+    public Task<AppDto> getApp(final long id) {
+        return call(new Callable<AppDto>() {
+            @Override
+            public AppDto call() throws Exception {
+                return connection.getApp(id);
+            }
+        });
+    }
+
+    /**
+     * Search apps with name
+     * 
+     * @param name
+     * @param limit
+     * @param offset
+     * @return the task of the list of apps
+     */
+    public Task<List<AppDto>> getApps(final String name, final long limit, final long offset) {
+        return call(new Callable<List<AppDto>>() {
+            @Override
+            public List<AppDto> call() throws Exception {
+                return connection.getApps(name, limit, offset);
+            }
+        });
+    }
+
+    /**
+     * Search apps with id, code or name
+     * 
+     * @param ids
+     * @param codes
+     * @param name
+     * @param spaceIds
+     * @param limit
+     * @param offset
+     * @return the task of the list of apps
+     */
+    public Task<List<AppDto>> getApps(final List<Long> ids, final List<String> codes,
+            final String name, final List<Long> spaceIds, final long limit, final long offset) {
+        return call(new Callable<List<AppDto>>() {
+            @Override
+            public List<AppDto> call() throws Exception {
+                return connection.getApps(ids, codes, name, spaceIds, limit, offset);
+            }
+        });
+    }
+
+    /**
+     * Get record comments
+     * 
+     * @param app
+     *            application id
+     * @param record
+     *            record id
+     * @param descending
+     *            sort in a descending order if true
+     * @param limit
+     * @param offset
+     * @return the task of the list of comments
+     */
+    public Task<CommentSet> getComments(final long app, final long record,
+            final boolean descending, final long limit, final long offset) {
+        return call(new Callable<CommentSet>() {
+            @Override
+            public CommentSet call() throws Exception {
+                return connection.getComments(app, record, descending, limit, offset);
+            }
+        });
+    }
+}
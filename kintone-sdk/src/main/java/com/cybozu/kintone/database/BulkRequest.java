@@ -18,7 +18,9 @@ import com.cybozu.kintone.database.exception.ParseException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Bulk request.
@@ -27,6 +29,7 @@ import java.util.List;
 public class BulkRequest {
 
     List<BulkRequestData> requests = new ArrayList<BulkRequestData>();
+    Set<Long> modifiedApps = new HashSet<Long>(); // to invalidate the record cache
     
     /**
      * Constructor
@@ -60,15 +63,17 @@ public class BulkRequest {
     public void insert(long app, List<Record> records) {
         
         JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForInsert(app, records);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
-        }
+        for (List<Record> chunk : Connection.split(records, Connection.MAX_RECORDS_PER_REQUEST)) {
+            String json;
+            try {
+                json = parser.recordsToJsonForInsert(app, chunk);
+            } catch (IOException e) {
+                throw new ParseException("failed to encode to json");
+            }
 
-        BulkRequestData request = new BulkRequestData("POST", "/k/v1/records.json", json);
-        requests.add(request);
+            BulkRequestData request = new BulkRequestData("POST", "/k/v1/records.json", json);
+            requests.add(request);
+        }
     }
 
     /**
@@ -113,16 +118,19 @@ public class BulkRequest {
      */
     public void update(long app, List<Long> ids, Record record) {
         
+        modifiedApps.add(app);
         JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForUpdate(app, ids, record);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
-        }
+        for (List<Long> chunk : Connection.split(ids, Connection.MAX_RECORDS_PER_REQUEST)) {
+            String json;
+            try {
+                json = parser.recordsToJsonForUpdate(app, chunk, record);
+            } catch (IOException e) {
+                throw new ParseException("failed to encode to json");
+            }
 
-        BulkRequestData request = new BulkRequestData("PUT", "/k/v1/records.json", json);
-        requests.add(request);
+            BulkRequestData request = new BulkRequestData("PUT", "/k/v1/records.json", json);
+            requests.add(request);
+        }
     }
 
     /**
@@ -135,16 +143,19 @@ public class BulkRequest {
      */
     public void updateByRecords(long app, List<Record> records) {
         
+        modifiedApps.add(app);
         JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForUpdate(app, records);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
-        }
+        for (List<Record> chunk : Connection.split(records, Connection.MAX_RECORDS_PER_REQUEST)) {
+            String json;
+            try {
+                json = parser.recordsToJsonForUpdate(app, chunk);
+            } catch (IOException e) {
+                throw new ParseException("failed to encode to json");
+            }
 
-        BulkRequestData request = new BulkRequestData("PUT", "/k/v1/records.json", json);
-        requests.add(request);
+            BulkRequestData request = new BulkRequestData("PUT", "/k/v1/records.json", json);
+            requests.add(request);
+        }
     }
 
     /**
@@ -185,16 +196,19 @@ public class BulkRequest {
      */
     public void deleteByRecords(long app, List<Record> records) {
         
+        modifiedApps.add(app);
         JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForDelete(app, records);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
+        for (List<Record> chunk : Connection.split(records, Connection.MAX_RECORDS_PER_REQUEST)) {
+            String json;
+            try {
+                json = parser.recordsToJsonForDelete(app, chunk);
+            } catch (IOException e) {
+                throw new ParseException("failed to encode to json");
+            }
+            
+            BulkRequestData request = new BulkRequestData("DELETE", "/k/v1/records.json", json);
+            requests.add(request);
         }
-        
-        BulkRequestData request = new BulkRequestData("DELETE", "/k/v1/records.json", json);
-        requests.add(request);
     }
 
     /**
@@ -214,7 +228,50 @@ public class BulkRequest {
         deleteByRecords(app, records);
     }
 
+    /**
+     * Gets the number of the requests. A list of more than
+     * {@link Connection#MAX_RECORDS_PER_REQUEST} records is counted as
+     * several requests.
+     * 
+     * @return the number of the requests
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Gets the json string of all the requests.
+     * 
+     * @return the json string
+     */
     public String getJson() {
+        return getJson(requests);
+    }
+
+    /**
+     * Gets the json strings of the requests packed into the batches of
+     * {@link Connection#MAX_BULK_REQUESTS} requests, which kintone accepts in a
+     * bulk request. Each batch is processed atomically, but the batches are
+     * not.
+     * 
+     * @return the list of the json strings
+     */
+    public List<String> getBatchJsons() {
+        List<String> batches = new ArrayList<String>();
+        for (List<BulkRequestData> batch : Connection.split(requests, Connection.MAX_BULK_REQUESTS)) {
+            batches.add(getJson(batch));
+        }
+        return batches;
+    }
+
+    /**
+     * Gets the json string of the requests.
+     * 
+     * @param requests
+     *            the list of the requests
+     * @return the json string
+     */
+    private static String getJson(List<BulkRequestData> requests) {
         StringBuilder sb = new StringBuilder();
         sb.append("{\"requests\":[");
         
@@ -0,0 +1,97 @@
+//   Copyright 2014 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+
+package com.cybozu.kintone.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a request in a bulk request.
+ * 
+ */
+public class BulkResult {
+    private List<Long> ids = new ArrayList<Long>();
+    private List<Long> revisions = new ArrayList<Long>();
+    private Long id;
+    private Long revision;
+
+    /**
+     * Constructor
+     */
+    public BulkResult() {
+    }
+
+    /**
+     * @return the ids of the inserted records, or an empty list
+     */
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    /**
+     * @param ids
+     *            the ids of the inserted records
+     */
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * @return the revisions of the inserted or updated records, or an empty
+     *         list
+     */
+    public List<Long> getRevisions() {
+        return revisions;
+    }
+
+    /**
+     * @param revisions
+     *            the revisions of the inserted or updated records
+     */
+    public void setRevisions(List<Long> revisions) {
+        this.revisions = revisions;
+    }
+
+    /**
+     * @return the id of the record, or null if not returned
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @param id
+     *            the id of the record
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the revision of the record, or null if not returned
+     */
+    public Long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @param revision
+     *            the revision of the record
+     */
+    public void setRevision(Long revision) {
+        this.revision = revision;
+    }
+}
@@ -0,0 +1,666 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+import com.cybozu.kintone.database.exception.TypeMismatchException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read only result set which keeps the values by column instead of by
+ * record. The field names and types are kept once for the whole result, the
+ * ids, the revisions and the integer values of the number fields are kept in
+ * the arrays of long, and no record or field object is created per row.
+ * Use this for the large results read through the cursor methods, which work
+ * like those of {@link ResultSet}. A field missing in a record reads as null.
+ *
+ */
+public class ColumnarResultSet {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Connection connection;
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private final List<String> names = new ArrayList<String>();
+    private final List<Column> columns = new ArrayList<Column>();
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] revisions = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    private int row = -1;
+    private Long totalCount = null;
+
+    /**
+     * The values of a field.
+     */
+    private abstract static class Column {
+        final FieldType type;
+        final BitSet present = new BitSet();
+        final BitSet nulls = new BitSet();
+
+        Column(FieldType type) {
+            this.type = type;
+        }
+
+        /**
+         * @return the value of a present and non null row as string
+         */
+        abstract String getString(int row);
+
+        /**
+         * @return the value of a present and non null row as long
+         */
+        abstract Long getLong(int row);
+
+        /**
+         * @return the value of a present and non null row
+         */
+        abstract Object getValue(int row);
+    }
+
+    /**
+     * The values of a number field while they are all integers.
+     */
+    private static class LongColumn extends Column {
+        private long[] values = new long[INITIAL_CAPACITY];
+        private final BitSet blanks = new BitSet();
+
+        LongColumn(FieldType type) {
+            super(type);
+        }
+
+        void set(int row, long value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, row + 1));
+            }
+            values[row] = value;
+        }
+
+        void setBlank(int row) {
+            blanks.set(row);
+        }
+
+        @Override
+        String getString(int row) {
+            return blanks.get(row) ? "" : Long.toString(values[row]);
+        }
+
+        @Override
+        Long getLong(int row) {
+            if (blanks.get(row)) {
+                throw new TypeMismatchException();
+            }
+            return values[row];
+        }
+
+        @Override
+        Object getValue(int row) {
+            return getString(row);
+        }
+
+        /**
+         * @param size
+         *            the number of the rows
+         * @return the column holding the same values as strings
+         */
+        StringColumn toStringColumn(int size) {
+            StringColumn column = new StringColumn(type);
+            column.present.or(present);
+            column.nulls.or(nulls);
+            for (int i = present.nextSetBit(0); i >= 0 && i < size; i = present.nextSetBit(i + 1)) {
+                if (!nulls.get(i)) {
+                    column.set(i, getString(i));
+                }
+            }
+            return column;
+        }
+    }
+
+    /**
+     * The values of a field held as strings.
+     */
+    private static class StringColumn extends Column {
+        private String[] values = new String[INITIAL_CAPACITY];
+
+        StringColumn(FieldType type) {
+            super(type);
+        }
+
+        void set(int row, String value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, row + 1));
+            }
+            values[row] = value;
+        }
+
+        @Override
+        String getString(int row) {
+            return values[row];
+        }
+
+        @Override
+        Long getLong(int row) {
+            try {
+                return Long.valueOf(values[row]);
+            } catch (NumberFormatException e) {
+                throw new TypeMismatchException();
+            }
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     * The values of a field held as objects, such as lists and users.
+     */
+    private static class ObjectColumn extends Column {
+        private Object[] values = new Object[INITIAL_CAPACITY];
+
+        ObjectColumn(FieldType type) {
+            super(type);
+        }
+
+        void set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, row + 1));
+            }
+            values[row] = value;
+        }
+
+        @Override
+        String getString(int row) {
+            return values[row].toString();
+        }
+
+        @Override
+        Long getLong(int row) {
+            throw new TypeMismatchException();
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     * @param connection
+     *            The database connection which retrieved this result set.
+     */
+    public ColumnarResultSet(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Adds a new row, whose fields are set by {@link #set}.
+     */
+    void addRow() {
+        if (size >= ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            revisions = Arrays.copyOf(revisions, revisions.length * 2);
+        }
+        ids[size] = -1;
+        revisions[size] = -1;
+        size++;
+    }
+
+    /**
+     * Sets a field of the last row.
+     * 
+     * @param name
+     *            field name
+     * @param type
+     *            field type
+     * @param value
+     *            the value converted as the field object holds it
+     */
+    void set(String name, FieldType type, Object value) {
+        int last = size - 1;
+        if (type == FieldType.__ID__ || type == FieldType.__REVISION__) {
+            Long number = toLong(value);
+            if (number != null) {
+                if (type == FieldType.__ID__) {
+                    ids[last] = number;
+                } else {
+                    revisions[last] = number;
+                }
+            }
+            return;
+        }
+
+        Column column = getOrAddColumn(name, type);
+        column.present.set(last);
+        if (value == null) {
+            column.nulls.set(last);
+            return;
+        }
+        if (column instanceof LongColumn) {
+            LongColumn longColumn = (LongColumn) column;
+            String str = value.toString();
+            if (str.length() == 0) {
+                longColumn.setBlank(last);
+                return;
+            }
+            if (isCanonicalLong(str)) {
+                longColumn.set(last, Long.parseLong(str));
+                return;
+            }
+            column = longColumn.toStringColumn(last);
+            columns.set(indexes.get(name), column);
+        }
+        if (column instanceof StringColumn) {
+            ((StringColumn) column).set(last, value.toString());
+        } else {
+            ((ObjectColumn) column).set(last, value);
+        }
+    }
+
+    /**
+     * Gets the column of the field, adding it on the first value.
+     */
+    private Column getOrAddColumn(String name, FieldType type) {
+        Integer index = indexes.get(name);
+        if (index != null) {
+            return columns.get(index);
+        }
+        Column column;
+        if (type == FieldType.NUMBER) {
+            column = new LongColumn(type);
+        } else if (JsonParser.isStringValue(type)) {
+            column = new StringColumn(type);
+        } else {
+            column = new ObjectColumn(type);
+        }
+        indexes.put(name, columns.size());
+        names.add(name);
+        columns.add(column);
+        return column;
+    }
+
+    /**
+     * Returns true if the string is an integer which reads back the same.
+     */
+    private static boolean isCanonicalLong(String str) {
+        int start = str.charAt(0) == '-' ? 1 : 0;
+        int length = str.length() - start;
+        if (length == 0 || length > 18) return false;
+        if (str.charAt(start) == '0' && (length > 1 || start == 1)) return false;
+        for (int i = start; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Long.valueOf((String) value);
+            } catch (NumberFormatException e) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves to the previous record.
+     * 
+     * @return true if succeeded
+     */
+    public boolean previous() {
+        if (row <= 0)
+            return false;
+        row--;
+        return true;
+    }
+
+    /**
+     * Moves to the next record.
+     * 
+     * @return true if succeeded
+     */
+    public boolean next() {
+        if (row + 1 >= size)
+            return false;
+        row++;
+        return true;
+    }
+
+    /**
+     * Moves to the first record.
+     * 
+     * @return true if succeeded
+     */
+    public boolean first() {
+        if (size == 0)
+            return false;
+        row = 0;
+        return true;
+    }
+
+    /**
+     * Moves to the last record.
+     * 
+     * @return true if succeeded
+     */
+    public boolean last() {
+        if (size == 0)
+            return false;
+        row = size - 1;
+        return true;
+    }
+
+    /**
+     * Gets the record number of the record.
+     * 
+     * @return record number
+     */
+    public Long getId() {
+        return ids[current()];
+    }
+
+    /**
+     * Gets the revision number of the record.
+     * 
+     * @return revision number
+     */
+    public Long getRevision() {
+        return revisions[current()];
+    }
+
+    /**
+     * Gets the count of the record set.
+     * 
+     * @return record count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the record has the field.
+     * 
+     * @param name
+     *            field name
+     * @return true if the field exists
+     */
+    public boolean hasField(String name) {
+        Column column = getColumn(name);
+        return column != null && column.present.get(current());
+    }
+
+    /**
+     * Checks if the record value is empty.
+     * 
+     * @param name
+     *            field name
+     * @return true if the field value is empty or missing
+     */
+    public boolean isEmpty(String name) {
+        return getColumnAt(name) == null;
+    }
+
+    /**
+     * Gets total count.
+     * 
+     * @return total count
+     */
+    public Long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * Sets total count
+     * 
+     * @param totalCount
+     *            total count
+     */
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * Gets the field value as long.
+     * 
+     * @param name
+     *            field name
+     * @return a long value of the field
+     */
+    public Long getLong(String name) {
+        Column column = getColumnAt(name);
+        return column == null ? null : column.getLong(row);
+    }
+
+    /**
+     * Gets the field value as string.
+     * 
+     * @param name
+     *            field name
+     * @return a string value of the field
+     */
+    public String getString(String name) {
+        Column column = getColumnAt(name);
+        return column == null ? null : column.getString(row);
+    }
+
+    /**
+     * Gets the field value as user object.
+     * 
+     * @param name
+     *            field name
+     * @return a user object
+     */
+    public UserDto getUser(String name) {
+        Object value = getValue(name);
+        if (value == null || value instanceof UserDto) {
+            return (UserDto) value;
+        }
+        throw new TypeMismatchException();
+    }
+
+    /**
+     * Gets the field value as user object array.
+     * 
+     * @param name
+     *            field name
+     * @return a list of user objects
+     */
+    @SuppressWarnings("unchecked")
+    public List<UserDto> getUsers(String name) {
+        return (List<UserDto>) getList(name);
+    }
+
+    /**
+     * Gets the field value as file object.
+     * 
+     * @param name
+     *            field name
+     * @return a list of file objects
+     */
+    @SuppressWarnings("unchecked")
+    public List<FileDto> getFiles(String name) {
+        return (List<FileDto>) getList(name);
+    }
+
+    /**
+     * Gets the field value as string array.
+     * 
+     * @param name
+     *            field name
+     * @return a list of strings
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getStrings(String name) {
+        return (List<String>) getList(name);
+    }
+
+    /**
+     * Gets the field value as date.
+     * 
+     * @param name
+     *            field name
+     * @return a date object
+     */
+    public Date getDate(String name) {
+        return Record.parseDate(getString(name));
+    }
+
+    /**
+     * Gets the field value as date time.
+     * 
+     * @param name
+     *            field name
+     * @return a date object
+     */
+    public Date getDateTime(String name) {
+        return Record.parseDateTime(getString(name));
+    }
+
+    /**
+     * Gets the field value as a sub table.
+     * 
+     * @param name
+     *            field name
+     * @return a sub table object
+     */
+    @SuppressWarnings("unchecked")
+    public List<Record> getSubtable(String name) {
+        return (List<Record>) getList(name);
+    }
+
+    /**
+     * Gets the field type of the specified field.
+     * 
+     * @param name
+     *            field name
+     * @return field type, or null if no record has the field
+     */
+    public FieldType getFieldType(String name) {
+        Column column = getColumn(name);
+        return column == null ? null : column.type;
+    }
+
+    /**
+     * Gets the set of the field names of all the records.
+     * 
+     * @return set of the field name
+     */
+    public Set<String> getFieldNames() {
+        return new LinkedHashSet<String>(names);
+    }
+
+    /**
+     * Creates the record object of the current record.
+     * 
+     * @return the record object
+     */
+    public Record getRecord() {
+        return getRecord(current());
+    }
+
+    /**
+     * Creates the record object of the record at the position.
+     * 
+     * @param index
+     *            the position of the record
+     * @return the record object
+     */
+    public Record getRecord(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        Record record = new Record(ids[index], revisions[index]);
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (!column.present.get(index)) continue;
+            Object value = column.nulls.get(index) ? null : column.getValue(index);
+            String name = names.get(i);
+            record.addField(name, new Field(name, column.type, value));
+        }
+        return record;
+    }
+
+    /**
+     * Downloads the file body.
+     * 
+     * @param name
+     *            field name
+     * @param index
+     *            index of the download file
+     * @return downloaded file
+     * @throws IOException
+     * @throws DBException
+     */
+    public File downloadFile(String name, int index) throws IOException,
+            DBException {
+        List<FileDto> files = getFiles(name);
+        return connection.downloadFile(files.get(index).getFileKey());
+    }
+
+    /**
+     * @return the position of the current record
+     */
+    private int current() {
+        if (row < 0) {
+            throw new IllegalStateException("no current record");
+        }
+        return row;
+    }
+
+    private Column getColumn(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? null : columns.get(index);
+    }
+
+    /**
+     * @return the column if the current record has a non null value of the
+     *         field, otherwise null
+     */
+    private Column getColumnAt(String name) {
+        Column column = getColumn(name);
+        int current = current();
+        if (column == null || !column.present.get(current) || column.nulls.get(current)) {
+            return null;
+        }
+        return column;
+    }
+
+    private Object getValue(String name) {
+        Column column = getColumnAt(name);
+        return column == null ? null : column.getValue(row);
+    }
+
+    private List<?> getList(String name) {
+        Object value = getValue(name);
+        if (value == null || value instanceof List) {
+            return (List<?>) value;
+        }
+        throw new TypeMismatchException();
+    }
+}
@@ -20,18 +20,22 @@ import android.util.Log;
 
 import com.cybozu.kintone.database.exception.DBException;
 import com.cybozu.kintone.database.exception.DBNotFoundException;
+import com.cybozu.kintone.database.exception.DBPartialInsertException;
 import com.cybozu.kintone.database.exception.ParseException;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.Authenticator;
 import java.net.HttpURLConnection;
@@ -41,6 +45,12 @@ import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -49,16 +59,29 @@ import java.security.SecureRandom;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
@@ -69,12 +92,20 @@ import javax.net.ssl.X509TrustManager;
  */
 public class Connection {
     public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    public static final int DEFAULT_CURSOR_SIZE = 500;
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_UPLOAD_CONCURRENCY = 4;
+    public static final int MAX_RECORDS_PER_REQUEST = 100;
+    public static final int MAX_BULK_REQUESTS = 20;
     
     private final String AUTH_HEADER = "X-Cybozu-Authorization";
     private final String API_TOKEN = "X-Cybozu-API-Token";
     private final String JSON_CONTENT = "application/json";
     private final String API_PREFIX = "/k/v1/";
     private final String GUEST_API_PREFIX = "/k/guest/%d/v1/";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // the longest rest of a response read through to reuse the connection
+    private static final long MAX_DRAIN_LENGTH = 8192;
     
     private final String BOUNDARY = "boundary_aj8gksdnsdfakj342fs3dt3stk8g6j32";
     private final String USER_AGENT_KEY = "User-Agent";
@@ -89,9 +120,24 @@ public class Connection {
     private Proxy proxy;
     private String userAgent = USER_AGENT_VALUE;
     private boolean trustAllHosts; // for debug
+    private boolean basicAuth;
     private boolean useClientCert;
+    private String clientCert;
+    private String clientCertPassword;
+    private SSLSocketFactory sslSocketFactory; // cached for the current settings
     private long guestSpaceId = -1;
     private HashMap<String, String> headers = new HashMap<String, String>();
+    private HttpTransport transport = new DefaultHttpTransport();
+    private ExecutorService executor;
+    private boolean ownExecutor;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int uploadConcurrency = DEFAULT_UPLOAD_CONCURRENCY;
+    private volatile FileCache fileCache;
+    private volatile RecordCache recordCache;
+    private volatile AppCache appCache;
+    private boolean indexedRecords = false;
+    private boolean lazyFields = false;
+    private final Map<Long, SyncState> syncStates = new HashMap<Long, SyncState>();
 
     /**
      * Constructor
@@ -175,7 +221,17 @@ public class Connection {
         headers.clear();
         this.trustAllHosts = false;
         this.useClientCert = false;
+        this.clientCert = null;
+        this.clientCertPassword = null;
+        invalidateSSLSocketFactory();
         Authenticator.setDefault(null);
+        transport.close();
+        synchronized (this) {
+            if (ownExecutor && executor != null) {
+                executor.shutdown();
+            }
+            executor = null;
+        }
     }
 
     /**
@@ -194,6 +250,7 @@ public class Connection {
      */
     public void setTrustAllHosts(boolean trustAllHosts) {
         this.trustAllHosts = trustAllHosts;
+        invalidateSSLSocketFactory();
     }
 
     /**
@@ -203,6 +260,7 @@ public class Connection {
      * @param password
      */
     public void setBasicAuth(final String username, final String password) {
+        basicAuth = true;
         Authenticator.setDefault(new Authenticator() {
             protected PasswordAuthentication getPasswordAuthentication() {
                 return new PasswordAuthentication(username, password
@@ -255,6 +313,222 @@ public class Connection {
                 port));
     }
 
+    /**
+     * Gets the transport which sends the requests.
+     * 
+     * @return the transport object
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the transport which sends the requests.
+     * 
+     * @param transport
+     *            the transport object
+     */
+    public void setTransport(HttpTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        this.transport = transport;
+    }
+
+    /**
+     * Gets the executor which runs the background work of this connection,
+     * such as prefetching the next page. Unless set, a pool of daemon threads
+     * is created on the first use.
+     * 
+     * @return the executor
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "kintone-sdk-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            ownExecutor = true;
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the executor which runs the background work of this connection.
+     * The executor is not shut down by {@link #close()}.
+     * 
+     * @param executor
+     *            the executor
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        if (ownExecutor && this.executor != null) {
+            this.executor.shutdown();
+        }
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    /**
+     * Gets the size of the buffer used to transfer the files.
+     * 
+     * @return the buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the buffer used to transfer the files. It is also the
+     * chunk length of the uploads whose length is unknown.
+     * 
+     * @param bufferSize
+     *            the buffer size in bytes
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Gets the maximum number of the files uploaded concurrently before the
+     * records are written.
+     * 
+     * @return the upload concurrency
+     */
+    public int getUploadConcurrency() {
+        return uploadConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of the files uploaded concurrently before the
+     * records are written. 1 uploads the files one after another.
+     * 
+     * @param uploadConcurrency
+     *            the upload concurrency
+     */
+    public void setUploadConcurrency(int uploadConcurrency) {
+        if (uploadConcurrency <= 0) {
+            throw new IllegalArgumentException("uploadConcurrency must be positive");
+        }
+        this.uploadConcurrency = uploadConcurrency;
+    }
+
+    /**
+     * Gets the disk cache of the downloaded files.
+     * 
+     * @return the file cache, or null if not set
+     */
+    public FileCache getFileCache() {
+        return fileCache;
+    }
+
+    /**
+     * Sets the disk cache of the downloaded files. {@link #downloadFile}
+     * reads the files from the cache and downloads only the missing ones.
+     * The cache is not closed by {@link #close()}.
+     * 
+     * @param fileCache
+     *            the file cache, or null to download every file
+     */
+    public void setFileCache(FileCache fileCache) {
+        this.fileCache = fileCache;
+    }
+
+    /**
+     * Gets the cache of the records selected by id.
+     * 
+     * @return the record cache, or null if not set
+     */
+    public RecordCache getRecordCache() {
+        return recordCache;
+    }
+
+    /**
+     * Sets the cache of the records selected by id. See {@link RecordCache}
+     * for how the updates and the deletes through this connection keep it
+     * consistent; changes made elsewhere are not detected.
+     * 
+     * @param recordCache
+     *            the record cache, or null to select every record
+     */
+    public void setRecordCache(RecordCache recordCache) {
+        this.recordCache = recordCache;
+    }
+
+    /**
+     * Gets the cache of the application information.
+     * 
+     * @return the app cache, or null if not set
+     */
+    public AppCache getAppCache() {
+        return appCache;
+    }
+
+    /**
+     * Sets the cache of the application information used by
+     * {@link #getApp(long)}, {@link #getAppByCode(String)} and
+     * {@link #getApps}. The stale entries are refreshed on the executor.
+     * 
+     * @param appCache
+     *            the app cache, or null to fetch every time
+     */
+    public void setAppCache(AppCache appCache) {
+        this.appCache = appCache;
+    }
+
+    /**
+     * Returns true if the selected records are {@link IndexedRecord}s.
+     * 
+     * @return true if the records are indexed
+     */
+    public boolean isIndexedRecords() {
+        return indexedRecords;
+    }
+
+    /**
+     * Sets whether the selected records are {@link IndexedRecord}s, which
+     * keep the values in an array and share the field names and types among
+     * the records of a response. This takes much less memory for the large
+     * results, and the fields can be read by position; see
+     * {@link ResultSet#getFieldIndex(String)}.
+     * 
+     * @param indexedRecords
+     *            true to select the indexed records
+     */
+    public void setIndexedRecords(boolean indexedRecords) {
+        this.indexedRecords = indexedRecords;
+    }
+
+    /**
+     * Returns true if the fields of the selected records are converted when
+     * they are read.
+     * 
+     * @return true if the fields are converted lazily
+     */
+    public boolean isLazyFields() {
+        return lazyFields;
+    }
+
+    /**
+     * Sets whether the lists, the users and the sub tables of the selected
+     * records are kept as parsed json and converted on the first read, so
+     * the wide records cost only for the fields actually read.
+     * 
+     * @param lazyFields
+     *            true to convert the fields lazily
+     */
+    public void setLazyFields(boolean lazyFields) {
+        this.lazyFields = lazyFields;
+    }
+
     /**
      * Sets the client certificate authentication.
      * 
@@ -267,27 +541,58 @@ public class Connection {
         System.setProperty(SSL_KEY_STORE, cert);
         System.setProperty(SSL_KEY_STORE_PASSWORD, password);
 
+        this.clientCert = cert;
+        this.clientCertPassword = password;
         this.useClientCert = true;
+        invalidateSSLSocketFactory();
     }
 
     /**
-     * Binds the client certification to the connection.
-     * @param conn
-     *            connection object
+     * Discards the cached socket factory so that it is rebuilt with the
+     * current settings.
+     */
+    private synchronized void invalidateSSLSocketFactory() {
+        this.sslSocketFactory = null;
+    }
+
+    /**
+     * Gets the socket factory for the current settings. The factory is built
+     * once and shared by all the requests, which lets the TLS sessions be
+     * resumed and the keep-alive sockets be reused.
+     * 
+     * @return the socket factory, or null if the default factory is used
+     * @throws DBException
+     */
+    private synchronized SSLSocketFactory getSSLSocketFactory() throws DBException {
+        if (this.sslSocketFactory == null) {
+            if (this.useClientCert) {
+                this.sslSocketFactory = certificate();
+            } else if (this.trustAllHosts) {
+                this.sslSocketFactory = trustAllHosts();
+            }
+        }
+        return this.sslSocketFactory;
+    }
+
+    /**
+     * Creates the socket factory which binds the client certification.
+     * @return the socket factory
      * @throws DBException
      */
-    private void certificate(HttpsURLConnection conn) throws DBException {
+    private SSLSocketFactory certificate() throws DBException {
         try {
             TrustManagerFactory tmf = TrustManagerFactory
                     .getInstance(TrustManagerFactory.getDefaultAlgorithm());
             tmf.init((KeyStore) null);
 
             KeyStore key_store = KeyStore.getInstance("PKCS12");
-            char[] key_pass = System.getProperty(SSL_KEY_STORE_PASSWORD)
-                    .toCharArray();
-            key_store.load(
-                    new FileInputStream(System.getProperty(SSL_KEY_STORE)),
-                    key_pass);
+            char[] key_pass = this.clientCertPassword.toCharArray();
+            InputStream is = new FileInputStream(this.clientCert);
+            try {
+                key_store.load(is, key_pass);
+            } finally {
+                is.close();
+            }
             KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
             kmf.init(key_store, key_pass);
 
@@ -295,7 +600,7 @@ public class Connection {
 
             sslcontext.init(kmf.getKeyManagers(), tmf.getTrustManagers(),
                     new SecureRandom());
-            conn.setSSLSocketFactory(sslcontext.getSocketFactory());
+            return sslcontext.getSocketFactory();
         } catch (KeyManagementException e) {
             throw new DBException(e);
         } catch (KeyStoreException e) {
@@ -312,12 +617,11 @@ public class Connection {
     }
 
     /**
-     * Makes the connection trust all hosts.
+     * Creates the socket factory which trusts all hosts.
      * 
-     * @param conn
-     *            connection object
+     * @return the socket factory, or null if failed
      */
-    private static void trustAllHosts(HttpsURLConnection conn) {
+    private static SSLSocketFactory trustAllHosts() {
 
         X509TrustManager easyTrustManager = new X509TrustManager() {
             @Override
@@ -346,11 +650,12 @@ public class Connection {
 
             sc.init(null, trustAllCerts, new SecureRandom());
 
-            conn.setSSLSocketFactory(sc.getSocketFactory());
+            return sc.getSocketFactory();
 
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return null;
     }
 
     /**
@@ -411,136 +716,392 @@ public class Connection {
      * @return response string
      * @throws DBException
      */
-    public String request(String method, String api, String body, File outFile)
+    public String request(String method, String api, String body, final File outFile)
             throws DBException {
-        HttpsURLConnection conn = null;
-        String response = null;
+        RequestBody requestBody = null;
+        if (body != null) {
+            requestBody = new StringRequestBody(body);
+        }
 
-        URL url;
-        try {
-            url = this.getURL(api);
-        } catch (MalformedURLException e1) {
-            throw new DBException("invalid url");
+        if (outFile != null) {
+            send(method, api, requestBody, new ResponseHandler<Void>() {
+                @Override
+                public Void handle(InputStream is, long length) throws IOException {
+                    OutputStream os = new FileOutputStream(outFile);
+                    try {
+                        copy(is, os, length, null);
+                    } finally {
+                        os.close();
+                    }
+                    return null;
+                }
+            });
+            return null;
         }
 
+        return send(method, api, requestBody);
+    }
 
-        try {
-            if (this.proxy == null) {
-                conn = (HttpsURLConnection) url.openConnection();
-            } else {
-                conn = (HttpsURLConnection) url.openConnection(proxy);
-            }
-            if (this.trustAllHosts) {
-                trustAllHosts(conn);
-                conn.setHostnameVerifier(new VerifyEverythingHostnameVerifier());
+    /**
+     * Sends a request to kintone, writing the body directly to the
+     * connection.
+     * 
+     * @param method
+     *            GET, POST, PUT or DELETE
+     * @param api
+     *            api file path and query string
+     * @param body
+     *            request data body
+     * @return response string
+     * @throws DBException
+     */
+    private String send(String method, String api, RequestBody body)
+            throws DBException {
+        return send(method, api, body, new ResponseHandler<String>() {
+            @Override
+            public String handle(InputStream is, long length) throws IOException {
+                return streamToString(is);
             }
+        });
+    }
 
-            if (this.useClientCert) {
-                certificate(conn);
-            }
+    /**
+     * A request body of a string encoded in UTF-8.
+     */
+    private static class StringRequestBody implements RequestBody {
+        private final byte[] bytes;
 
-            setHTTPHeaders(conn);
+        public StringRequestBody(String body) {
+            this.bytes = body.getBytes(UTF_8);
+        }
 
-            conn.setRequestMethod(method);
-        } catch (IOException e) {
+        @Override
+        public long getLength() {
+            return bytes.length;
+        }
 
-            throw new DBException("can not open connection");
+        @Override
+        public void writeTo(OutputStream os) throws IOException {
+            os.write(bytes);
         }
-        boolean post = false;
-        if (method.equals("PUT") || method.equals("POST") || method.equals("DELETE")) {
-            post = true;
+    }
+
+    /**
+     * A request body of the records, which is encoded while it is sent in
+     * chunks. An error of the encoding is reported as {@link ParseException}.
+     */
+    private static abstract class RecordsRequestBody implements RequestBody {
+        @Override
+        public long getLength() {
+            return -1;
         }
+    }
 
-        if (post) {
-            conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Type", JSON_CONTENT);
+    /**
+     * Sends a request to kintone and passes the response stream to the
+     * handler.
+     * 
+     * @param method
+     *            GET, POST, PUT or DELETE
+     * @param api
+     *            api file path and query string
+     * @param body
+     *            request data body, streamed with its length or in chunks
+     *            if the length is unknown, unless the basic authentication
+     *            is used
+     * @param handler
+     *            the handler which reads the response
+     * @return the result of the handler
+     * @throws DBException
+     */
+    <T> T send(String method, String api, RequestBody body, ResponseHandler<T> handler)
+            throws DBException {
+        HttpURLConnection conn = null;
+        T response = null;
+
+        URL url;
+        try {
+            url = this.getURL(api);
+        } catch (MalformedURLException e1) {
+            throw new DBException("invalid url");
         }
+
         try {
-            conn.connect();
+            conn = openConnection(url, method);
         } catch (IOException e) {
-            throw new DBException("cannot connect to host");
+
+            throw new DBException("can not open connection");
         }
+        boolean reusable = false;
+        try {
+            boolean post = false;
+            if (method.equals("PUT") || method.equals("POST") || method.equals("DELETE")) {
+                post = true;
+            }
 
-        if (post) {
-            // send request
-            OutputStream os;
-            try {
-                os = conn.getOutputStream();
-            } catch (IOException e) {
-                throw new DBException("an error occurred while sending data");
+            if (post) {
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", JSON_CONTENT);
+                if (canStream()) {
+                    long length = body == null ? 0 : body.getLength();
+                    if (length >= 0 && length <= Integer.MAX_VALUE) {
+                        conn.setFixedLengthStreamingMode((int) length);
+                    } else {
+                        conn.setChunkedStreamingMode(0);
+                    }
+                }
             }
             try {
-	            OutputStreamWriter writer = new OutputStreamWriter(os, "UTF-8");
-	            writer.write(body);
-	            writer.close();
-            } catch(IOException e) {
-            	throw new DBException("socket error");
+                conn.connect();
+            } catch (IOException e) {
+                throw new DBException("cannot connect to host");
             }
-            
-        }
 
-        // receive response
-        try {
-            checkStatus(conn);
-            InputStream is = conn.getInputStream();
-            try {
-                if (outFile != null) {
-                    OutputStream os = new FileOutputStream(outFile);
+            if (post) {
+                // send request
+                RequestStream os;
+                try {
+                    os = new RequestStream(conn.getOutputStream());
+                } catch (IOException e) {
+                    throw new DBException("an error occurred while sending data");
+                }
+                try {
                     try {
-                        byte[] buffer = new byte[8192];
-                        int n = 0;
-                        while (-1 != (n = is.read(buffer))) {
-                            os.write(buffer, 0, n);
+                        if (body != null) {
+                            body.writeTo(os);
                         }
                     } finally {
                         os.close();
                     }
-                } else {
-                    response = streamToString(is);
+                } catch(IOException e) {
+                    if (!os.isFailed()) {
+                        throw new ParseException("failed to encode to json", e);
+                    }
+                    throw new DBException("socket error");
                 }
-            } finally {
-                is.close();
+
             }
-        } catch (IOException e) {
 
-            throw new DBException("an error occurred while receiving data");
+            // receive response
+            try {
+                checkStatus(conn);
+                InputStream is = conn.getInputStream();
+                try {
+                    // the handlers close the stream, which is kept open for
+                    // the check of the end
+                    response = handler.handle(new UnclosableInputStream(is),
+                            conn.getContentLength());
+                    reusable = isConsumed(is);
+                } finally {
+                    is.close();
+                }
+            } catch (MalformedJsonException e) {
+                throw new ParseException("failed to parse json", e);
+            } catch (IOException e) {
+
+                throw new DBException("an error occurred while receiving data");
+            }
+        } finally {
+            transport.release(conn, reusable);
         }
 
-        // System.out.println(response);
         return response;
 
     }
 
     /**
-     * Checks the status code of the response.
-     * @param conn
-     *             a connection object
+     * Returns true if the response stream has been read to the end. A handler
+     * may stop early, and the connection with the rest of the body can not be
+     * reused. A short rest, e.g. the white spaces after the json, is read
+     * through.
+     * 
+     * @param is
+     *            the response stream
+     * @return true if the stream is at the end
      */
-    private void checkStatus(HttpURLConnection conn) throws IOException, DBException {
-        int statusCode = conn.getResponseCode();
-
-        if (statusCode == 404) {
-            ErrorResponse response = getErrorResponse(conn);
-            if (response == null) {
-                throw new DBNotFoundException("not found");
-            } else {
-                throw new DBNotFoundException(statusCode, response);
+    private static boolean isConsumed(InputStream is) {
+        byte[] buffer = new byte[1024];
+        long rest = MAX_DRAIN_LENGTH;
+        try {
+            int n;
+            while (-1 != (n = is.read(buffer))) {
+                rest -= n;
+                if (rest < 0) {
+                    return false;
+                }
             }
+            return true;
+        } catch (IOException e) {
+            return false;
         }
-        if (statusCode != 200) {
-            ErrorResponse response = getErrorResponse(conn);
-            if (response == null) {
-                throw new DBException("http status error(" + statusCode + ")");
-            } else {
-                throw new DBException(statusCode, response);
-            }
+    }
+
+    /**
+     * A response stream passed to the handlers, which is closed by
+     * {@link Connection#send(String, String, RequestBody, ResponseHandler)}
+     * rather than by the handler.
+     */
+    private static class UnclosableInputStream extends FilterInputStream {
+        UnclosableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
         }
     }
-    
+
     /**
-     * Creates an error response object.
-     * @param conn
-     * @return ErrorResponse object. return null if any error occurred
+     * A request stream which tells the errors of the connection from the
+     * errors of the request body written to it.
+     */
+    private static class RequestStream extends FilterOutputStream {
+        private boolean failed;
+
+        RequestStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        /**
+         * @return true if the connection failed
+         */
+        boolean isFailed() {
+            return failed;
+        }
+    }
+
+    /**
+     * Returns true if the request bodies can be streamed. A streamed body can
+     * not be sent again when the server or the proxy asks for the
+     * credentials, so the body is buffered by HttpURLConnection when the
+     * basic authentication is used.
+     * 
+     * @return true if the streaming mode can be used
+     */
+    private boolean canStream() {
+        if (basicAuth) {
+            return false;
+        }
+        for (String name : headers.keySet()) {
+            if (name.equalsIgnoreCase("Authorization")
+                    || name.equalsIgnoreCase("Proxy-Authorization")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens a connection through the transport and applies the settings of
+     * this connection.
+     * 
+     * @param url
+     *            the url of the api
+     * @param method
+     *            GET, POST, PUT or DELETE
+     * @return the connection object
+     * @throws IOException
+     * @throws DBException
+     */
+    private HttpURLConnection openConnection(URL url, String method)
+            throws IOException, DBException {
+        HttpURLConnection conn = transport.open(url, this.proxy);
+        try {
+            if (conn instanceof HttpsURLConnection) {
+                HttpsURLConnection https = (HttpsURLConnection) conn;
+                if (this.trustAllHosts) {
+                    https.setHostnameVerifier(new VerifyEverythingHostnameVerifier());
+                }
+
+                SSLSocketFactory factory = getSSLSocketFactory();
+                if (factory != null) {
+                    https.setSSLSocketFactory(factory);
+                }
+            }
+
+            setHTTPHeaders(conn);
+
+            conn.setRequestMethod(method);
+        } catch (IOException e) {
+            transport.release(conn, false);
+            throw e;
+        } catch (DBException e) {
+            transport.release(conn, false);
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Checks the status code of the response.
+     * @param conn
+     *             a connection object
+     */
+    private void checkStatus(HttpURLConnection conn) throws IOException, DBException {
+        int statusCode = conn.getResponseCode();
+
+        if (statusCode == 404) {
+            ErrorResponse response = getErrorResponse(conn);
+            if (response == null) {
+                throw new DBNotFoundException("not found");
+            } else {
+                throw new DBNotFoundException(statusCode, response);
+            }
+        }
+        if (statusCode != 200) {
+            ErrorResponse response = getErrorResponse(conn);
+            if (response == null) {
+                throw new DBException("http status error(" + statusCode + ")");
+            } else {
+                throw new DBException(statusCode, response);
+            }
+        }
+    }
+    
+    /**
+     * Creates an error response object.
+     * @param conn
+     * @return ErrorResponse object. return null if any error occurred
      */
     private ErrorResponse getErrorResponse(HttpURLConnection conn) {
         
@@ -566,10 +1127,12 @@ public class Connection {
      *            content type
      * @param file
      *            uploaded file
+     * @param listener
+     *            the listener of the progress, or null
      * @return file key of the uploaded file
      * @throws DBException
      */
-    private String upload(File file, String contentType) throws DBException {
+    private String upload(File file, String contentType, ProgressListener listener) throws DBException {
         InputStream isFile;
 
         try {
@@ -579,7 +1142,7 @@ public class Connection {
         }
         
         try {
-            return upload(isFile, file.getName(), contentType);
+            return upload(isFile, file.getName(), contentType, file.length(), listener);
         } finally {
             try {
                 isFile.close();
@@ -590,7 +1153,8 @@ public class Connection {
     }
     
     /**
-     * Uploads a file from input stream.
+     * Uploads a file from input stream. The file is streamed with the fixed
+     * length if the length is known, or in chunks otherwise.
      * 
      * @param input
      *            the file stream to be uploaded
@@ -598,82 +1162,96 @@ public class Connection {
      *            file name
      * @param contentType
      *            content type
+     * @param length
+     *            the length of the file, or -1 if unknown
+     * @param listener
+     *            the listener of the progress, or null
      * @return file key of the uploaded file
      * @throws DBException
      */
-    private String upload(InputStream input, String fileName, String contentType) throws DBException {
-        HttpsURLConnection conn;
+    private String upload(InputStream input, String fileName, String contentType,
+            long length, ProgressListener listener) throws DBException {
+        HttpURLConnection conn;
         String response = null;
 
         URL url;
         try {
             url = this.getURL("file.json");
-
-            if (this.proxy == null) {
-                conn = (HttpsURLConnection) url.openConnection();
-            } else {
-                conn = (HttpsURLConnection) url.openConnection(proxy);
-            }
-            if (this.trustAllHosts) {
-                trustAllHosts(conn);
-                conn.setHostnameVerifier(new VerifyEverythingHostnameVerifier());
-            }
-
-            if (this.useClientCert) {
-                certificate(conn);
-            }
-
-            setHTTPHeaders(conn);
-
-            conn.setRequestMethod("POST");
-        } catch (Exception e) {
+        } catch (MalformedURLException e) {
             throw new DBException("invalid url");
         }
 
-        conn.setDoOutput(true);
-        conn.setRequestProperty("Content-Type",
-                "multipart/form-data; boundary=" + BOUNDARY);
-
         try {
-            conn.connect();
+            conn = openConnection(url, "POST");
         } catch (IOException e) {
-            throw new DBException("cannot connect to host");
+            throw new DBException("can not open connection");
         }
 
-        OutputStream os;
-
+        boolean reusable = false;
         try {
-                os = conn.getOutputStream();
-                OutputStreamWriter writer = new OutputStreamWriter(os, "UTF-8");
-                writer.write("--" + BOUNDARY + "\r\n");
-                writer.write("Content-Disposition: form-data; name=\"file\"; filename=\""
-                        + fileName + "\"\r\n");
-                writer.write("Content-Type: " + contentType + "\r\n\r\n");
-                writer.flush();
-                byte[] buffer = new byte[8192];
-                int n = 0;
-                while (-1 != (n = input.read(buffer))) {
-                    os.write(buffer, 0, n);
+            byte[] head = ("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\""
+                    + fileName + "\"\r\n"
+                    + "Content-Type: " + contentType + "\r\n\r\n").getBytes(UTF_8);
+            byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(UTF_8);
+
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type",
+                    "multipart/form-data; boundary=" + BOUNDARY);
+            long contentLength = length >= 0 ? head.length + length + tail.length : -1;
+            if (canStream()) {
+                if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+                    conn.setFixedLengthStreamingMode((int) contentLength);
+                } else {
+                    conn.setChunkedStreamingMode(bufferSize);
                 }
-                os.flush();
-                writer.write("\r\n--" + BOUNDARY + "--\r\n");
-                os.flush();
-                writer.close();
-        } catch (IOException e) {
-            throw new DBException("an error occurred while sending data");
-        }
-    
-        // receive response
-        try {
-            checkStatus(conn);
-            InputStream is = conn.getInputStream();
+            }
+
             try {
-                response = streamToString(is);
-            } finally {
-                is.close();
+                conn.connect();
+            } catch (IOException e) {
+                throw new DBException("cannot connect to host");
             }
-        } catch (IOException e) {
-            throw new DBException("an error occurred while receiving data");
+
+            OutputStream os;
+
+            try {
+                    os = conn.getOutputStream();
+                    try {
+                        os.write(head);
+                        byte[] buffer = new byte[bufferSize];
+                        long transferred = 0;
+                        int n = 0;
+                        while (-1 != (n = input.read(buffer))) {
+                            os.write(buffer, 0, n);
+                            transferred += n;
+                            if (listener != null) {
+                                listener.onProgress(transferred, length);
+                            }
+                        }
+                        os.write(tail);
+                    } finally {
+                        os.close();
+                    }
+            } catch (IOException e) {
+                throw new DBException("an error occurred while sending data");
+            }
+
+            // receive response
+            try {
+                checkStatus(conn);
+                InputStream is = conn.getInputStream();
+                try {
+                    response = streamToString(is);
+                } finally {
+                    is.close();
+                }
+            } catch (IOException e) {
+                throw new DBException("an error occurred while receiving data");
+            }
+            reusable = true;
+        } finally {
+            transport.release(conn, reusable);
         }
 
         JsonParser parser = new JsonParser();
@@ -783,7 +1361,8 @@ public class Connection {
     }
     
     /**
-     * Selects the records from kintone using a query string.
+     * Selects the records from kintone into a columnar result set, which
+     * takes much less memory than {@link ResultSet} for the large results.
      * 
      * @param app
      *            application id
@@ -791,103 +1370,610 @@ public class Connection {
      *            query string
      * @param columns
      *            column names if needed
-     * @param totalCount
-     *            retrieve total count(true/false)
-     * @return ResultSet object
+     * @return ColumnarResultSet object
      * @throws DBException
      */
-    private ResultSet select(long app, String query, String[] columns, boolean totalCount)
+    public ColumnarResultSet selectColumnar(long app, String query, String[] columns)
             throws DBException {
+        return selectColumnar(app, query, columns, false);
+    }
 
-        try {
-            if(query!=null){
-
-
-                query = URLEncoder.encode(query, "UTF-8");
-//                query =  Uri.encode(query);
-//                query =   URLEncoder.encode(query, "utf-8");
-            }
+    /**
+     * Selects the records from kintone into a columnar result set with the
+     * total count.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @return ColumnarResultSet object
+     * @throws DBException
+     */
+    public ColumnarResultSet selectColumnarWithTotalCount(long app, String query, String[] columns)
+            throws DBException {
+        return selectColumnar(app, query, columns, true);
+    }
 
-        } catch (Exception e) {
-            Log.d("log","ex ="+e.toString());
-        }
-        StringBuilder sb = new StringBuilder();
-        sb.append("app=");
-        sb.append(app);
+    /**
+     * Selects the records from kintone into a columnar result set.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @param totalCount
+     *            retrieve total count(true/false)
+     * @return ColumnarResultSet object
+     * @throws DBException
+     */
+    private ColumnarResultSet selectColumnar(long app, String query, String[] columns,
+            boolean totalCount) throws DBException {
 
-        if(query!=null){
-            sb.append("&query=");
-            sb.append(query);
-        }
+        String api = buildSelectApi(app, query, columns, totalCount);
 
-        if (columns != null) {
-            int i = 0;
-            for (String column : columns) {
-                sb.append("&fields[" + i + "]=");
-                try {
-                	sb.append(URLEncoder.encode(column, "UTF-8"));
-                } catch (UnsupportedEncodingException e) {
+        final JsonParser parser = new JsonParser();
+        try {
+            return send("GET", api, null, new ResponseHandler<ColumnarResultSet>() {
+                @Override
+                public ColumnarResultSet handle(InputStream is, long length) throws IOException {
+                    return parser.jsonToColumnarResultSet(Connection.this, is);
                 }
-                i++;
-            }
-        }
-
-
-        if (totalCount) {
-        	sb.append("&totalCount=true");
+            });
+        } catch (JsonParseException e) {
+            throw new ParseException("failed to parse json to resultset", e);
+        } catch (IllegalStateException e) {
+            throw new ParseException("failed to parse json to resultset", e);
         }
+    }
 
+    /**
+     * Selects the records from kintone using a query string.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @param totalCount
+     *            retrieve total count(true/false)
+     * @return ResultSet object
+     * @throws DBException
+     */
+    private ResultSet select(long app, String query, String[] columns, boolean totalCount)
+            throws DBException {
 
+        String api = buildSelectApi(app, query, columns, totalCount);
 
-        
-        String api = new String(sb);
-
-        Log.d("log","api query: "+api);
-
-        String response = request("GET", "records.json?" + api, null);
-
-        Log.d("log","response = "+response);
+        final JsonParser parser = newRecordParser();
+        try {
+            return send("GET", api, null, new ResponseHandler<ResultSet>() {
+                @Override
+                public ResultSet handle(InputStream is, long length) throws IOException {
+                    return parser.jsonToResultSet(Connection.this, is);
+                }
+            });
+        } catch (JsonParseException e) {
 
+            Log.d("log","api ex = "+e.toString());
 
-        JsonParser parser = new JsonParser();
-        ResultSet rs = null;
-        
-        try {
-            rs = parser.jsonToResultSet(this, response);
-        } catch (IOException e) {
+            throw new ParseException("failed to parse json to resultset", e);
+        } catch (IllegalStateException e) {
 
             Log.d("log","api ex = "+e.toString());
 
-            throw new ParseException("failed to parse json to resultset");
+            throw new ParseException("failed to parse json to resultset", e);
         }
-
-        return rs;
     }
 
     /**
-     * Inserts a new record.
+     * Selects the records from kintone and passes them to the handler one by
+     * one while the response is being read.
      * 
      * @param app
      *            application id
-     * @param record
-     *            The Record object to be inserted
-     * @return The id number of inserted record
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @param handler
+     *            the handler which receives the records
+     * @return the number of the records handled
      * @throws DBException
      */
-    public long insert(long app, Record record) throws DBException {
-        List<Record> list = new ArrayList<Record>();
-        list.add(record);
-        List<Long> ids = insert(app, list);
-        
-        if (ids.size() > 0) {
-            return ids.get(0);
-        }
-        throw new DBException("Failed to insert new record.");
-    }
+    public long select(long app, String query, String[] columns, final RecordHandler handler)
+            throws DBException {
 
-    /**
-     * Uploads the file binded with the field and sets the file key.
-     * @param field
+        String api = buildSelectApi(app, query, columns, false);
+
+        final JsonParser parser = newRecordParser();
+        final DBException[] aborted = new DBException[1];
+        long count;
+        try {
+            count = send("GET", api, null, new ResponseHandler<Long>() {
+                @Override
+                public Long handle(InputStream is, long length) throws IOException {
+                    RecordReader reader = parser.openRecordReader(is);
+                    long count = 0;
+                    try {
+                        while (reader.hasNext()) {
+                            handler.handle(reader.next());
+                            count++;
+                        }
+                    } catch (DBException e) {
+                        aborted[0] = e;
+                    } finally {
+                        reader.close();
+                    }
+                    return count;
+                }
+            });
+        } catch (JsonParseException e) {
+            throw new ParseException("failed to parse json to records", e);
+        } catch (IllegalStateException e) {
+            throw new ParseException("failed to parse json to records", e);
+        }
+        if (aborted[0] != null) {
+            throw aborted[0];
+        }
+        return count;
+    }
+
+    /**
+     * Selects all the records matching the query, reading them page by page
+     * in the order of $id. Unlike the offset paging, each page costs the same
+     * and the 10,000 offset limit does not apply. The next page is fetched in
+     * the background while the caller processes the current one.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            the condition of the query without "order by", "limit" and
+     *            "offset", or null for all the records
+     * @param columns
+     *            column names if needed
+     * @return the iterator of the records
+     */
+    public SeekRecordIterator selectAll(long app, String query, String[] columns) {
+        return new SeekRecordIterator(this, app, query, columns, 0, -1, getExecutor());
+    }
+
+    /**
+     * Selects all the records matching the query with the concurrent
+     * requests. The $id space between the smallest and the largest matching
+     * ids is split into the ranges, which are read by the bounded workers and
+     * merged into a single stream.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            the condition of the query without "order by", "limit" and
+     *            "offset", or null for all the records
+     * @param columns
+     *            column names if needed
+     * @param partitions
+     *            the number of the ranges
+     * @param concurrency
+     *            the maximum number of the concurrent requests, which should
+     *            be within the concurrent request limit of kintone
+     * @param ordered
+     *            true to return the records in the order of $id
+     * @return the iterator of the records
+     * @throws DBException
+     */
+    public ParallelRecordReader selectParallel(long app, String query, String[] columns,
+            int partitions, int concurrency, boolean ordered) throws DBException {
+        if (partitions <= 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("partitions and concurrency must be positive");
+        }
+        String condition = (query == null || query.trim().length() == 0) ? "" : "(" + query.trim() + ") ";
+        String[] idOnly = { "$id" };
+
+        ResultSet first = select(app, condition + "order by $id asc limit 1", idOnly);
+        if (!first.next()) {
+            return new ParallelRecordReader(this, app, query, columns, new long[] { 0 }, concurrency, ordered);
+        }
+        long minId = first.getId();
+        ResultSet last = select(app, condition + "order by $id desc limit 1", idOnly);
+        long maxId = last.next() ? last.getId() : minId;
+
+        long span = maxId - minId + 1;
+        int count = (int) Math.min(partitions, span);
+        long[] bounds = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            bounds[i] = minId - 1 + span * i / count;
+        }
+        bounds[count] = maxId;
+        return new ParallelRecordReader(this, app, query, columns, bounds, concurrency, ordered);
+    }
+
+    /**
+     * Delivers the records added, updated or deleted since the last sync of
+     * the application through this connection. The first sync delivers all
+     * the records as added. See {@link #sync(long, SyncState, SyncListener)}.
+     * 
+     * @param app
+     *            application id
+     * @param listener
+     *            the listener of the changes
+     * @return the number of the changes delivered
+     * @throws DBException
+     */
+    public int sync(long app, SyncListener listener) throws DBException {
+        return sync(app, getSyncState(app), listener);
+    }
+
+    /**
+     * Delivers the records added, updated or deleted since the watermark of
+     * the state. Only the records whose updated time is not older than the
+     * watermark are selected, so the cost follows the number of the changes
+     * rather than the size of the application; the deleted records are found
+     * by a scan of the ids only. The state is advanced as each page of the
+     * changes is handled, so a failed sync resumes from there.
+     * 
+     * @param app
+     *            application id
+     * @param state
+     *            the sync state, such as the one restored from a saved
+     *            watermark and the revisions
+     * @param listener
+     *            the listener of the changes
+     * @return the number of the changes delivered
+     * @throws DBException
+     */
+    public int sync(long app, SyncState state, SyncListener listener) throws DBException {
+        synchronized (state) {
+            return new DeltaSync(this, app, state, listener).run();
+        }
+    }
+
+    /**
+     * Gets the sync state of the application kept by this connection.
+     * 
+     * @param app
+     *            application id
+     * @return the sync state
+     */
+    public SyncState getSyncState(long app) {
+        synchronized (syncStates) {
+            SyncState state = syncStates.get(app);
+            if (state == null) {
+                state = new SyncState();
+                syncStates.put(app, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Sets the sync state of the application kept by this connection.
+     * 
+     * @param app
+     *            application id
+     * @param state
+     *            the sync state, or null to sync all the records next time
+     */
+    public void setSyncState(long app, SyncState state) {
+        synchronized (syncStates) {
+            if (state == null) {
+                syncStates.remove(app);
+            } else {
+                syncStates.put(app, state);
+            }
+        }
+    }
+
+    /**
+     * Selects the records into a list, counting the bytes of the response.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @param byteCount
+     *            the counter which the response size is added to
+     * @return the list of the records
+     * @throws DBException
+     */
+    List<Record> selectRecords(long app, String query, String[] columns, final AtomicLong byteCount)
+            throws DBException {
+
+        String api = buildSelectApi(app, query, columns, false);
+
+        final JsonParser parser = newRecordParser();
+        try {
+            return send("GET", api, null, new ResponseHandler<List<Record>>() {
+                @Override
+                public List<Record> handle(InputStream is, long length) throws IOException {
+                    RecordReader reader = parser.openRecordReader(new CountingInputStream(is, byteCount));
+                    List<Record> records = new ArrayList<Record>();
+                    try {
+                        while (reader.hasNext()) {
+                            records.add(reader.next());
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                    return records;
+                }
+            });
+        } catch (JsonParseException e) {
+            throw new ParseException("failed to parse json to records", e);
+        } catch (IllegalStateException e) {
+            throw new ParseException("failed to parse json to records", e);
+        }
+    }
+
+    /**
+     * Creates the parser of the selected records.
+     * 
+     * @return the parser
+     */
+    private JsonParser newRecordParser() {
+        JsonParser parser = new JsonParser();
+        parser.setIndexedRecords(indexedRecords);
+        parser.setLazyFields(lazyFields);
+        return parser;
+    }
+
+    /**
+     * Builds the api path and query string of records.json.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @param totalCount
+     *            retrieve total count(true/false)
+     * @return the api path
+     */
+    private String buildSelectApi(long app, String query, String[] columns, boolean totalCount) {
+
+        try {
+            if(query!=null){
+
+
+                query = URLEncoder.encode(query, "UTF-8");
+//                query =  Uri.encode(query);
+//                query =   URLEncoder.encode(query, "utf-8");
+            }
+
+        } catch (Exception e) {
+            Log.d("log","ex ="+e.toString());
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("app=");
+        sb.append(app);
+
+        if(query!=null){
+            sb.append("&query=");
+            sb.append(query);
+        }
+
+        if (columns != null) {
+            int i = 0;
+            for (String column : columns) {
+                sb.append("&fields[" + i + "]=");
+                try {
+                	sb.append(URLEncoder.encode(column, "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                }
+                i++;
+            }
+        }
+
+
+        if (totalCount) {
+        	sb.append("&totalCount=true");
+        }
+
+
+
+        
+        String api = new String(sb);
+
+        Log.d("log","api query: "+api);
+
+        return "records.json?" + api;
+    }
+
+    /**
+     * Creates a record cursor and returns the iterator over its records. The
+     * next page is fetched in the background while the caller processes the
+     * current one.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @return the cursor
+     * @throws DBException
+     */
+    public RecordCursor createCursor(long app, String query, String[] columns)
+            throws DBException {
+        return createCursor(app, query, columns, DEFAULT_CURSOR_SIZE);
+    }
+
+    /**
+     * Creates a record cursor and returns the iterator over its records.
+     * 
+     * @param app
+     *            application id
+     * @param query
+     *            query string
+     * @param columns
+     *            column names if needed
+     * @param size
+     *            the number of the records per page (up to 500)
+     * @return the cursor
+     * @throws DBException
+     */
+    public RecordCursor createCursor(long app, String query, String[] columns, int size)
+            throws DBException {
+        JsonParser parser = new JsonParser();
+        String json;
+        try {
+            json = parser.generateForCreateCursor(app, columns, query, size);
+        } catch (IOException e) {
+            throw new ParseException("failed to encode to json");
+        }
+
+        String response = request("POST", "records/cursor.json", json);
+
+        String[] cursor;
+        try {
+            cursor = parser.jsonToCursor(response);
+        } catch (IOException e) {
+            throw new ParseException("failed to parse json to cursor");
+        }
+        return new RecordCursor(this, cursor[0], Long.valueOf(cursor[1]), getExecutor());
+    }
+
+    /**
+     * Fetches the next page of a record cursor.
+     * 
+     * @param id
+     *            cursor id
+     * @return the page
+     * @throws DBException
+     */
+    RecordPage fetchCursor(String id) throws DBException {
+        String api;
+        try {
+            api = "records/cursor.json?id=" + URLEncoder.encode(id, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new DBException("Malformed cursor id");
+        }
+
+        final JsonParser parser = newRecordParser();
+        try {
+            return send("GET", api, null, new ResponseHandler<RecordPage>() {
+                @Override
+                public RecordPage handle(InputStream is, long length) throws IOException {
+                    RecordReader reader = parser.openRecordReader(is);
+                    List<Record> records = new ArrayList<Record>();
+                    try {
+                        while (reader.hasNext()) {
+                            records.add(reader.next());
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                    return new RecordPage(records, reader.hasMore());
+                }
+            });
+        } catch (JsonParseException e) {
+            throw new ParseException("failed to parse json to records", e);
+        } catch (IllegalStateException e) {
+            throw new ParseException("failed to parse json to records", e);
+        }
+    }
+
+    /**
+     * Deletes a record cursor.
+     * 
+     * @param id
+     *            cursor id
+     * @throws DBException
+     */
+    void deleteCursor(String id) throws DBException {
+        JsonParser parser = new JsonParser();
+        String json;
+        try {
+            json = parser.generateForDeleteCursor(id);
+        } catch (IOException e) {
+            throw new ParseException("failed to encode to json");
+        }
+
+        request("DELETE", "records/cursor.json", json);
+    }
+
+    /**
+     * Inserts a new record.
+     * 
+     * @param app
+     *            application id
+     * @param record
+     *            The Record object to be inserted
+     * @return The id number of inserted record
+     * @throws DBException
+     */
+    public long insert(long app, Record record) throws DBException {
+        List<Record> list = new ArrayList<Record>();
+        list.add(record);
+        List<Long> ids = insert(app, list);
+        
+        if (ids.size() > 0) {
+            return ids.get(0);
+        }
+        throw new DBException("Failed to insert new record.");
+    }
+
+    /**
+     * Selects a record by id. If the record cache is set, the record is read
+     * from it, and stored to it on a miss.
+     * 
+     * @param app
+     *            application id
+     * @param id
+     *            record id
+     * @return the record object
+     * @throws DBException
+     */
+    public Record selectById(long app, long id) throws DBException {
+        RecordCache cache = recordCache;
+        if (cache != null) {
+            Record record = cache.get(app, id);
+            if (record != null) {
+                return record;
+            }
+        }
+
+        String response = request("GET", "record.json?app=" + app + "&id=" + id, null);
+        JsonParser parser = new JsonParser();
+        Record record;
+        try {
+            record = parser.jsonToRecord(response);
+        } catch (IOException e) {
+            throw new ParseException("failed to parse json to record");
+        }
+        if (cache != null) {
+            cache.put(app, record, response.length());
+        }
+        return record;
+    }
+
+    /**
+     * Drops the records from the record cache.
+     * 
+     * @param app
+     *            application id
+     * @param ids
+     *            record ids
+     */
+    private void invalidateRecords(long app, Iterable<Long> ids) {
+        RecordCache cache = recordCache;
+        if (cache == null) return;
+        for (Long id : ids) {
+            if (id != null) {
+                cache.invalidate(app, id);
+            }
+        }
+    }
+
+    /**
+     * Uploads the file binded with the field and sets the file key.
+     * @param field
      * @throws DBException
      */
     public void lazyUpload(Field field) throws DBException {
@@ -903,7 +1989,53 @@ public class Connection {
     }
     
     /**
-     * Inserts new records.
+     * Uploads the files binded with the fields of the records. The uploads run
+     * concurrently on the executor, up to the upload concurrency at a time.
+     * The first error stops the uploads not started yet, and is thrown once
+     * the running ones end.
+     * 
+     * @param records
+     *            the records
+     * @throws DBException
+     */
+    public void lazyUpload(List<Record> records) throws DBException {
+        List<Field> fields = new ArrayList<Field>();
+        for (Record record: records) {
+            for (Map.Entry<String,Field> entry: record.getEntrySet()) {
+                Field field = entry.getValue();
+                if (field.isLazyUpload()) {
+                    fields.add(field);
+                }
+            }
+        }
+        if (fields.size() <= 1 || uploadConcurrency == 1) {
+            for (Field field : fields) {
+                lazyUpload(field);
+            }
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Field field : fields) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    lazyUpload(field);
+                    return null;
+                }
+            });
+        }
+        runBounded(tasks, uploadConcurrency, "uploading files");
+    }
+
+    /**
+     * Inserts new records. More than {@link #MAX_RECORDS_PER_REQUEST} records
+     * are split into the chunks, which are inserted one after another. Each
+     * chunk is inserted atomically, but the chunks are not: if a chunk fails,
+     * the chunks before it stay inserted and the ones after it are not sent.
+     * The error is then thrown as {@link DBPartialInsertException}, which
+     * holds the ids of the records inserted. Use
+     * {@link #insertAtomically(long, List)} to insert all or none.
      * 
      * @param app
      *            application id
@@ -914,23 +2046,203 @@ public class Connection {
      */
     public List<Long> insert(long app, List<Record> records) throws DBException {
 
-        for (Record record: records) {
-            Set<Map.Entry<String,Field>> set = record.getEntrySet();
-            for (Map.Entry<String,Field> entry: set) {
-                Field field = entry.getValue();
-                lazyUpload(field); // force lazy upload
+        lazyUpload(records); // force lazy upload
+
+        List<Long> ids = new ArrayList<Long>();
+        for (List<Record> chunk : split(records, MAX_RECORDS_PER_REQUEST)) {
+            try {
+                ids.addAll(insertChunk(app, chunk));
+            } catch (DBException e) {
+                if (ids.isEmpty()) {
+                    throw e;
+                }
+                throw new DBPartialInsertException(e, ids);
             }
         }
-        
-        JsonParser parser = new JsonParser();
-        String json;
+        return ids;
+    }
+
+    /**
+     * Inserts new records, sending the chunks of
+     * {@link #MAX_RECORDS_PER_REQUEST} records concurrently. If a chunk fails,
+     * the chunks not sent yet are skipped and the error is thrown once the
+     * chunks being sent end, but the chunks already inserted are not rolled
+     * back.
+     * 
+     * @param app
+     *            application id
+     * @param records
+     *            The array of Record objects to be inserted
+     * @param concurrency
+     *            the maximum number of the concurrent requests
+     * @return The list of inserted id number in the order of the records
+     * @throws DBException
+     */
+    public List<Long> insertConcurrently(final long app, List<Record> records, int concurrency)
+            throws DBException {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+
+        lazyUpload(records); // force lazy upload
+
+        List<Callable<List<Long>>> tasks = new ArrayList<Callable<List<Long>>>();
+        for (final List<Record> chunk : split(records, MAX_RECORDS_PER_REQUEST)) {
+            tasks.add(new Callable<List<Long>>() {
+                @Override
+                public List<Long> call() throws Exception {
+                    return insertChunk(app, chunk);
+                }
+            });
+        }
+
+        List<Long> ids = new ArrayList<Long>();
+        for (List<Long> chunkIds : runBounded(tasks, concurrency, "inserting records")) {
+            ids.addAll(chunkIds);
+        }
+        return ids;
+    }
+
+    /**
+     * Runs the tasks on the executor, up to the concurrency at a time. Once a
+     * task fails or the caller is interrupted, the tasks not started yet are
+     * skipped. Every task submitted is awaited before this method returns or
+     * throws, so no task is left running, and the first error is thrown.
+     * 
+     * @param tasks
+     *            the tasks
+     * @param concurrency
+     *            the maximum number of the tasks running at a time
+     * @param action
+     *            what the tasks do, for the error message
+     * @return the results in the order of the tasks
+     * @throws DBException
+     */
+    private <T> List<T> runBounded(List<Callable<T>> tasks, int concurrency, String action)
+            throws DBException {
+        final Semaphore permits = new Semaphore(concurrency);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        InterruptedException interrupted = null;
         try {
-            json = parser.recordsToJsonForInsert(app, records);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
+            for (final Callable<T> task : tasks) {
+                permits.acquire();
+                if (stopped.get()) {
+                    break;
+                }
+                futures.add(getExecutor().submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        try {
+                            if (stopped.get()) {
+                                return null;
+                            }
+                            return task.call();
+                        } catch (Exception e) {
+                            error.compareAndSet(null, e);
+                            stopped.set(true);
+                            throw e;
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                }));
+            }
+        } catch (InterruptedException e) {
+            interrupted = e;
+            stopped.set(true);
+        } catch (RuntimeException e) {
+            // e.g. rejected by the executor
+            error.compareAndSet(null, e);
+            stopped.set(true);
+        }
+
+        List<T> results = new ArrayList<T>();
+        for (Future<T> future : futures) {
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    // the running tasks are still awaited
+                    if (interrupted == null) {
+                        interrupted = e;
+                    }
+                    stopped.set(true);
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+
+        if (interrupted != null) {
+            Thread.currentThread().interrupt();
+            throw new DBException(interrupted, "interrupted while " + action);
+        }
+        Exception cause = error.get();
+        if (cause instanceof DBException) {
+            throw (DBException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause != null) {
+            throw new DBException(cause);
         }
+        return results;
+    }
 
-        String response = request("POST", "records.json", json);
+    /**
+     * Inserts new records atomically with a bulk request. Either all the
+     * records are inserted or none of them are. Up to
+     * {@link #MAX_RECORDS_PER_REQUEST} * {@link #MAX_BULK_REQUESTS} records can
+     * be inserted at once.
+     * 
+     * @param app
+     *            application id
+     * @param records
+     *            The array of Record objects to be inserted
+     * @return The list of inserted id number in the order of the records
+     * @throws DBException
+     */
+    public List<Long> insertAtomically(long app, List<Record> records) throws DBException {
+        if (records.size() > MAX_RECORDS_PER_REQUEST * MAX_BULK_REQUESTS) {
+            throw new DBException("too many records to insert atomically");
+        }
+
+        lazyUpload(records); // force lazy upload
+
+        BulkRequest bulk = new BulkRequest();
+        for (List<Record> chunk : split(records, MAX_RECORDS_PER_REQUEST)) {
+            bulk.insert(app, chunk);
+        }
+
+        List<Long> ids = new ArrayList<Long>();
+        for (BulkResult result : bulkRequest(bulk)) {
+            ids.addAll(result.getIds());
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts up to {@link #MAX_RECORDS_PER_REQUEST} records with a request.
+     * 
+     * @param app
+     *            application id
+     * @param records
+     *            The array of Record objects to be inserted
+     * @return The list of inserted id number
+     * @throws DBException
+     */
+    private List<Long> insertChunk(final long app, final List<Record> records) throws DBException {
+        final JsonParser parser = new JsonParser();
+        String response = send("POST", "records.json", new RecordsRequestBody() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                parser.recordsToJsonForInsert(os, app, records);
+            }
+        });
 
         try {
             return parser.jsonToIDs(response);
@@ -939,6 +2251,23 @@ public class Connection {
         }
     }
 
+    /**
+     * Splits the list into the chunks.
+     * 
+     * @param list
+     *            the list to be split
+     * @param size
+     *            the maximum size of a chunk
+     * @return the list of the chunks
+     */
+    static <T> List<List<T>> split(List<T> list, int size) {
+        List<List<T>> chunks = new ArrayList<List<T>>();
+        for (int i = 0; i < list.size(); i += size) {
+            chunks.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return chunks;
+    }
+
     /**
      * Updates a record(deprecated).
      * 
@@ -963,31 +2292,31 @@ public class Connection {
      *            application id
      * @param record
      *            updated record object
-     * @return new revision number
-     * @throws DBException
-     */
-    public long updateRecord(long app, Record record) throws DBException {
-    	
-    	Set<Map.Entry<String,Field>> set = record.getEntrySet();
-        for (Map.Entry<String,Field> entry: set) {
-            Field field = entry.getValue();
-            lazyUpload(field); // force lazy upload
-        }
-    
-        JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForUpdate(app, record);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
-        }
-
-        String response = request("PUT", "record.json", json);
+     * @return new revision number
+     * @throws DBException
+     */
+    public long updateRecord(final long app, final Record record) throws DBException {
+    	
+        lazyUpload(Collections.singletonList(record)); // force lazy upload
+    
+        final JsonParser parser = new JsonParser();
+        String response = send("PUT", "record.json", new RecordsRequestBody() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                parser.recordsToJsonForUpdate(os, app, record);
+            }
+        });
+        long revision;
         try {
-            return parser.jsonToRevision(response);
+            revision = parser.jsonToRevision(response);
         } catch (IOException e) {
             throw new ParseException("failed to parse json to the revision number");
         }
+        RecordCache cache = recordCache;
+        if (cache != null) {
+            cache.invalidate(app, record.getId());
+        }
+        return revision;
     }
     
     /**
@@ -1001,24 +2330,19 @@ public class Connection {
      *            updated record object
      * @throws DBException
      */
-    public void update(long app, List<Long> ids, Record record)
+    public void update(final long app, final List<Long> ids, final Record record)
             throws DBException {
         
-        Set<Map.Entry<String,Field>> set = record.getEntrySet();
-        for (Map.Entry<String,Field> entry: set) {
-            Field field = entry.getValue();
-            lazyUpload(field); // force lazy upload
-        }
+        lazyUpload(Collections.singletonList(record)); // force lazy upload
     
-        JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForUpdate(app, ids, record);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
-        }
-
-        request("PUT", "records.json", json);
+        final JsonParser parser = new JsonParser();
+        send("PUT", "records.json", new RecordsRequestBody() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                parser.recordsToJsonForUpdate(os, app, ids, record);
+            }
+        });
+        invalidateRecords(app, ids);
     }
 
     /**
@@ -1030,25 +2354,22 @@ public class Connection {
      *            an array of the updated record object
      * @throws DBException
      */
-    public void updateRecords(long app, List<Record> records) throws DBException {
+    public void updateRecords(final long app, final List<Record> records) throws DBException {
         // upload files
-        for (Record record: records) {
-            Set<Map.Entry<String,Field>> set = record.getEntrySet();
-            for (Map.Entry<String,Field> entry: set) {
-                Field field = entry.getValue();
-                lazyUpload(field); // force lazy upload
-            }
-        }
+        lazyUpload(records); // force lazy upload
     
-        JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForUpdate(app, records);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
+        final JsonParser parser = new JsonParser();
+        send("PUT", "records.json", new RecordsRequestBody() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                parser.recordsToJsonForUpdate(os, app, records);
+            }
+        });
+        List<Long> ids = new ArrayList<Long>();
+        for (Record record : records) {
+            ids.add(record.getId());
         }
-
-        request("PUT", "records.json", json);
+        invalidateRecords(app, ids);
     }
     
     /**
@@ -1091,27 +2412,30 @@ public class Connection {
      * @return new revision number
      * @throws DBException
      */
-    public long updateRecordByKey(long app, String key, Record record) throws DBException {
-    	Set<Map.Entry<String,Field>> set = record.getEntrySet();
-        for (Map.Entry<String,Field> entry: set) {
-            Field field = entry.getValue();
-            lazyUpload(field); // force lazy upload
-        }
+    public long updateRecordByKey(final long app, final String key, final Record record) throws DBException {
+        lazyUpload(Collections.singletonList(record)); // force lazy upload
     
-        JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForUpdateByKey(app, key, record);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
-        }
-
-        String response = request("PUT", "record.json", json);
+        final JsonParser parser = new JsonParser();
+        String response = send("PUT", "record.json", new RecordsRequestBody() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                parser.recordsToJsonForUpdateByKey(os, app, key, record);
+            }
+        });
+        long revision;
         try {
-            return parser.jsonToRevision(response);
+            revision = parser.jsonToRevision(response);
         } catch (IOException e) {
             throw new ParseException("failed to parse json to the revision number");
         }
+        RecordCache cache = recordCache;
+        if (cache != null) {
+            Long id = cache.findId(app, key, record.getField(key).getValue());
+            if (id != null) {
+                cache.invalidate(app, id);
+            }
+        }
+        return revision;
     }
 
     /**
@@ -1125,25 +2449,25 @@ public class Connection {
      *            an array of the updated record object
      * @throws DBException
      */
-    public void updateRecordsByKey(long app, String key, List<Record> records) throws DBException {
+    public void updateRecordsByKey(final long app, final String key, final List<Record> records) throws DBException {
     	// upload files
-        for (Record record: records) {
-            Set<Map.Entry<String,Field>> set = record.getEntrySet();
-            for (Map.Entry<String,Field> entry: set) {
-                Field field = entry.getValue();
-                lazyUpload(field); // force lazy upload
-            }
-        }
+        lazyUpload(records); // force lazy upload
     
-        JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForUpdateByKey(app, key, records);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
+        final JsonParser parser = new JsonParser();
+        send("PUT", "records.json", new RecordsRequestBody() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                parser.recordsToJsonForUpdateByKey(os, app, key, records);
+            }
+        });
+        RecordCache cache = recordCache;
+        if (cache != null) {
+            List<Long> ids = new ArrayList<Long>();
+            for (Record record : records) {
+                ids.add(cache.findId(app, key, record.getField(key).getValue()));
+            }
+            invalidateRecords(app, ids);
         }
-
-        request("PUT", "records.json", json);
     }
     
 
@@ -1170,6 +2494,7 @@ public class Connection {
         }
 
         String response = request("PUT", "record/assignees.json", json);
+        invalidateRecords(app, Collections.singletonList(id));
 
         try {
             return parser.jsonToRevision(response);
@@ -1208,6 +2533,7 @@ public class Connection {
         }
 
         String response = request("PUT", "record/status.json", json);
+        invalidateRecords(app, Collections.singletonList(id));
 
         try {
             return parser.jsonToRevision(response);
@@ -1245,6 +2571,7 @@ public class Connection {
         }
 
         request("PUT", "records/status.json", json);
+        invalidateRecords(app, ids);
     }
     
     /**
@@ -1286,17 +2613,20 @@ public class Connection {
      *            a list of the record object to be deleted
      * @throws DBException
      */
-    public void deleteRecords(long app, List<Record> records) throws DBException {
+    public void deleteRecords(final long app, final List<Record> records) throws DBException {
         
-        JsonParser parser = new JsonParser();
-        String json;
-        try {
-            json = parser.recordsToJsonForDelete(app, records);
-        } catch (IOException e) {
-            throw new ParseException("failed to encode to json");
+        final JsonParser parser = new JsonParser();
+        send("DELETE", "records.json", new RecordsRequestBody() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                parser.recordsToJsonForDelete(os, app, records);
+            }
+        });
+        List<Long> ids = new ArrayList<Long>();
+        for (Record record : records) {
+            ids.add(record.getId());
         }
-        
-        request("DELETE", "records.json", json);
+        invalidateRecords(app, ids);
     }
 
     /**
@@ -1352,11 +2682,27 @@ public class Connection {
      * @throws DBException
      */
     public String uploadFile(File file, String contentType) throws DBException {
+        return uploadFile(file, contentType, null);
+    }
+
+    /**
+     * Uploads a file with the content type, reporting the progress.
+     * 
+     * @param file
+     *            file object to be uploaded
+     * @param contentType
+     *            content type
+     * @param listener
+     *            the listener of the progress, or null
+     * @return file key
+     * @throws DBException
+     */
+    public String uploadFile(File file, String contentType, ProgressListener listener) throws DBException {
 
         if (contentType == null) {
             contentType = DEFAULT_CONTENT_TYPE;
         }
-        return upload(file, contentType);
+        return upload(file, contentType, listener);
     }
 
     /**
@@ -1384,10 +2730,30 @@ public class Connection {
      * @throws DBException
      */
     public String uploadFile(String contentType, InputStream file, String fileName) throws DBException {
+        return uploadFile(contentType, file, fileName, null);
+    }
+
+    /**
+     * Uploads a file from input stream, reporting the progress. The stream is
+     * sent in chunks since its length is unknown.
+     * 
+     * @param contentType
+     *            content type
+     * @param file
+     *            file object to be uploaded
+     * @param fileName
+     *            upload file name
+     * @param listener
+     *            the listener of the progress, or null
+     * @return file key
+     * @throws DBException
+     */
+    public String uploadFile(String contentType, InputStream file, String fileName,
+            ProgressListener listener) throws DBException {
         if (contentType == null) {
             contentType = DEFAULT_CONTENT_TYPE;
         }
-        return upload(file, fileName, contentType);
+        return upload(file, fileName, contentType, -1, listener);
     }
 
     /**
@@ -1400,24 +2766,309 @@ public class Connection {
      * @throws DBException
      */
     public File downloadFile(String fileKey) throws IOException, DBException {
-        File tempFile = File.createTempFile(fileKey, null);
+        final File tempFile = File.createTempFile(fileKey, null);
 
-        request("GET", "file.json?fileKey=" + fileKey, null, tempFile);
+        download(fileKey, new ResponseHandler<Void>() {
+            @Override
+            public Void handle(InputStream is, long length) throws IOException {
+                OutputStream os = new FileOutputStream(tempFile);
+                try {
+                    copy(is, os, length, null);
+                } finally {
+                    os.close();
+                }
+                return null;
+            }
+        });
         return tempFile;
     }
+
+    /**
+     * Downloads a file into the stream. The stream is not closed.
+     * 
+     * @param fileKey
+     *            file key
+     * @param os
+     *            the stream to write the file
+     * @param listener
+     *            the listener of the progress, or null
+     * @return the number of the bytes downloaded
+     * @throws DBException
+     */
+    public long downloadFile(String fileKey, final OutputStream os,
+            final ProgressListener listener) throws DBException {
+        return download(fileKey, new ResponseHandler<Long>() {
+            @Override
+            public Long handle(InputStream is, long length) throws IOException {
+                return copy(is, os, length, listener);
+            }
+        });
+    }
+
+    /**
+     * Downloads a file into the channel. A file channel is written at its
+     * current position with {@link FileChannel#transferFrom}, and the
+     * position is advanced. The channel is not closed.
+     * 
+     * @param fileKey
+     *            file key
+     * @param channel
+     *            the channel to write the file
+     * @param listener
+     *            the listener of the progress, or null
+     * @return the number of the bytes downloaded
+     * @throws DBException
+     */
+    public long downloadFile(String fileKey, final WritableByteChannel channel,
+            final ProgressListener listener) throws DBException {
+        return download(fileKey, new ResponseHandler<Long>() {
+            @Override
+            public Long handle(InputStream is, long length) throws IOException {
+                ReadableByteChannel source = Channels.newChannel(is);
+                long transferred = 0;
+                if (channel instanceof FileChannel) {
+                    FileChannel file = (FileChannel) channel;
+                    long position = file.position();
+                    long n;
+                    while (0 < (n = file.transferFrom(source, position + transferred, bufferSize))) {
+                        transferred += n;
+                        if (listener != null) {
+                            listener.onProgress(transferred, length);
+                        }
+                    }
+                    file.position(position + transferred);
+                } else {
+                    ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+                    int n;
+                    while (-1 != (n = source.read(buffer))) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        buffer.clear();
+                        transferred += n;
+                        if (listener != null) {
+                            listener.onProgress(transferred, length);
+                        }
+                    }
+                }
+                return transferred;
+            }
+        });
+    }
+
+    /**
+     * Downloads a file and passes it to the handler block by block.
+     * 
+     * @param fileKey
+     *            file key
+     * @param handler
+     *            the handler which receives the blocks of the file
+     * @param listener
+     *            the listener of the progress, or null
+     * @return the number of the bytes downloaded
+     * @throws DBException
+     */
+    public long downloadFile(String fileKey, final DownloadHandler handler,
+            final ProgressListener listener) throws DBException {
+        return download(fileKey, new ResponseHandler<Long>() {
+            @Override
+            public Long handle(InputStream is, long length) throws IOException {
+                byte[] buffer = new byte[bufferSize];
+                long transferred = 0;
+                int n;
+                while (-1 != (n = is.read(buffer))) {
+                    handler.handle(buffer, 0, n);
+                    transferred += n;
+                    if (listener != null) {
+                        listener.onProgress(transferred, length);
+                    }
+                }
+                return transferred;
+            }
+        });
+    }
+
+    /**
+     * Downloads a file and passes it to the handler. If the file cache is set,
+     * the file is read from the cache, and downloaded into the cache first on
+     * a miss.
+     * 
+     * @param fileKey
+     *            file key
+     * @param handler
+     *            the handler which reads the file
+     * @return the result of the handler
+     * @throws DBException
+     */
+    private <T> T download(String fileKey, ResponseHandler<T> handler) throws DBException {
+        String api = "file.json?fileKey=" + fileKey;
+        FileCache cache = fileCache;
+        if (cache == null) {
+            return send("GET", api, null, handler);
+        }
+
+        File file = null;
+        File tempFile = null;
+        try {
+            try {
+                file = cache.get(fileKey);
+                if (file == null) {
+                    tempFile = cache.createTempFile();
+                    request("GET", api, null, tempFile);
+                    file = cache.put(fileKey, tempFile);
+                }
+            } catch (IOException e) {
+                throw new DBException(e, "file cache error");
+            }
+
+            InputStream is;
+            try {
+                is = new FileInputStream(file);
+            } catch (FileNotFoundException e) {
+                // evicted by another thread
+                return send("GET", api, null, handler);
+            }
+            try {
+                return handler.handle(is, file.length());
+            } catch (IOException e) {
+                throw new DBException(e, "an error occurred while reading the cached file");
+            } finally {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                }
+            }
+        } finally {
+            // left over if the download failed or the file was too large
+            if (tempFile != null && tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Copies the stream.
+     * 
+     * @param is
+     *            the source stream
+     * @param os
+     *            the destination stream
+     * @param length
+     *            the length of the source, or -1 if unknown
+     * @param listener
+     *            the listener of the progress, or null
+     * @return the number of the bytes copied
+     * @throws IOException
+     */
+    private long copy(InputStream is, OutputStream os, long length,
+            ProgressListener listener) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long transferred = 0;
+        int n;
+        while (-1 != (n = is.read(buffer))) {
+            os.write(buffer, 0, n);
+            transferred += n;
+            if (listener != null) {
+                listener.onProgress(transferred, length);
+            }
+        }
+        return transferred;
+    }
     
     /**
-     * Build update.
+     * Build update. The requests are sent in the batches of
+     * {@link #MAX_BULK_REQUESTS} requests one after another; each batch is
+     * processed atomically, but the batches are not.
      * 
      * @param bulk
      *            an instance of bulk request
+     * @return the results in the order of the requests
      * @throws DBException
      */
-    public void bulkRequest(BulkRequest bulk) throws DBException {
+    public List<BulkResult> bulkRequest(BulkRequest bulk) throws DBException {
         
-        String json = bulk.getJson();
-        
-        request("POST", "bulkRequest.json", json);
+        try {
+            List<BulkResult> results = new ArrayList<BulkResult>();
+            for (String json : bulk.getBatchJsons()) {
+                results.addAll(bulkRequestBatch(json));
+            }
+            return results;
+        } finally {
+            invalidateApps(bulk);
+        }
+    }
+
+    /**
+     * Build update, sending the batches of {@link #MAX_BULK_REQUESTS} requests
+     * concurrently. Each batch is processed atomically, but the batches are
+     * not, and a failed batch does not stop the batches already sent.
+     * 
+     * @param bulk
+     *            an instance of bulk request
+     * @param concurrency
+     *            the maximum number of the concurrent requests
+     * @return the results in the order of the requests
+     * @throws DBException
+     */
+    public List<BulkResult> bulkRequest(BulkRequest bulk, int concurrency) throws DBException {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+
+        List<Callable<List<BulkResult>>> tasks = new ArrayList<Callable<List<BulkResult>>>();
+        for (final String json : bulk.getBatchJsons()) {
+            tasks.add(new Callable<List<BulkResult>>() {
+                @Override
+                public List<BulkResult> call() throws Exception {
+                    return bulkRequestBatch(json);
+                }
+            });
+        }
+
+        try {
+            List<BulkResult> results = new ArrayList<BulkResult>();
+            for (List<BulkResult> batch : runBounded(tasks, concurrency, "sending bulk requests")) {
+                results.addAll(batch);
+            }
+            return results;
+        } finally {
+            invalidateApps(bulk);
+        }
+    }
+
+    /**
+     * Drops the records of the applications updated by the bulk request from
+     * the record cache.
+     * 
+     * @param bulk
+     *            an instance of bulk request
+     */
+    private void invalidateApps(BulkRequest bulk) {
+        RecordCache cache = recordCache;
+        if (cache == null) return;
+        for (Long app : bulk.modifiedApps) {
+            cache.invalidateApp(app);
+        }
+    }
+
+    /**
+     * Sends a batch of a bulk request.
+     * 
+     * @param json
+     *            the json string of the batch
+     * @return the results of the batch
+     * @throws DBException
+     */
+    private List<BulkResult> bulkRequestBatch(String json) throws DBException {
+        String response = request("POST", "bulkRequest.json", json);
+
+        JsonParser parser = new JsonParser();
+        try {
+            return parser.jsonToBulkResults(response);
+        } catch (IOException e) {
+            throw new ParseException("failed to parse json to bulk results");
+        }
     }
     
     /**
@@ -1427,7 +3078,28 @@ public class Connection {
      * 	            app id
      * @return app object
      */
-    public AppDto getApp(long id) throws DBException
+    public AppDto getApp(final long id) throws DBException
+    {
+        AppCache cache = appCache;
+        if (cache != null) {
+            return cache.getApp(id, new AppCache.Loader<AppDto>() {
+                @Override
+                public AppDto load() throws DBException {
+                    return fetchApp(id);
+                }
+            }, getExecutor());
+        }
+        return fetchApp(id);
+    }
+
+    /**
+     * Fetches the app information object
+     * 
+     * @param id 
+     * 	            app id
+     * @return app object
+     */
+    private AppDto fetchApp(long id) throws DBException
     {
         StringBuilder sb = new StringBuilder();
         sb.append("id=");
@@ -1447,6 +3119,40 @@ public class Connection {
         return app;
     }
     
+    /**
+     * Return the app information object by the app code
+     * 
+     * @param code
+     *            app code
+     * @return app object, or null if not found
+     */
+    public AppDto getAppByCode(final String code) throws DBException
+    {
+        AppCache cache = appCache;
+        if (cache != null) {
+            return cache.getAppByCode(code, new AppCache.Loader<AppDto>() {
+                @Override
+                public AppDto load() throws DBException {
+                    return fetchAppByCode(code);
+                }
+            }, getExecutor());
+        }
+        return fetchAppByCode(code);
+    }
+
+    /**
+     * Fetches the app information object by the app code
+     * 
+     * @param code
+     *            app code
+     * @return app object, or null if not found
+     */
+    private AppDto fetchAppByCode(String code) throws DBException
+    {
+        List<AppDto> apps = getApps(null, Collections.singletonList(code), null, null, 1, 0);
+        return apps.isEmpty() ? null : apps.get(0);
+    }
+    
     /**
      * Search apps with name
      * 
@@ -1545,11 +3251,32 @@ public class Connection {
     	sb.append(offset);
 
 
-        String query = new String(sb);
+        final String query = new String(sb);
 
 
         Log.d("log","getApps query:  "+query);
 
+        AppCache cache = appCache;
+        if (cache != null) {
+            List<AppDto> apps = cache.getApps(query, new AppCache.Loader<List<AppDto>>() {
+                @Override
+                public List<AppDto> load() throws DBException {
+                    return fetchApps(query);
+                }
+            }, getExecutor());
+            return new ArrayList<AppDto>(apps);
+        }
+        return fetchApps(query);
+    }
+
+    /**
+     * Fetches the apps with the query parameters of the search.
+     * 
+     * @param query
+     *            the query parameters
+     * @return the list of apps
+     */
+    private List<AppDto> fetchApps(String query) throws DBException {
         String response = request("GET", "apps.json?" + query, null);
         Log.d("log","response ="+response);
 
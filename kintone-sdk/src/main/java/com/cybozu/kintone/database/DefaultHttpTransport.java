@@ -0,0 +1,47 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * The default transport which opens a new HttpsURLConnection for each request.
+ *
+ */
+public class DefaultHttpTransport implements HttpTransport {
+
+    @Override
+    public HttpURLConnection open(URL url, Proxy proxy) throws IOException {
+        if (proxy == null) {
+            return (HttpURLConnection) url.openConnection();
+        } else {
+            return (HttpURLConnection) url.openConnection(proxy);
+        }
+    }
+
+    @Override
+    public void release(HttpURLConnection conn, boolean reusable) {
+        if (!reusable) {
+            conn.disconnect();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,258 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+import com.cybozu.kintone.database.exception.DBIterationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a delta sync of an application.
+ *
+ * A sync first reads the latest updated time of the application, which the
+ * next sync starts from, so the records updated while the pages are read are
+ * selected again next time. A sync without the start time reads all the
+ * records, and finds the deleted ones among the records it did not see. The
+ * following syncs select only the records whose updated time is not older
+ * than the start time, paged by "$id &gt; (the last id)", and find the deleted
+ * records by a scan of the ids only. The records whose revision is already
+ * known are skipped.
+ *
+ */
+class DeltaSync {
+    static final int PAGE_SIZE = SeekRecordIterator.PAGE_SIZE;
+
+    private final Connection connection;
+    private final long app;
+    private final SyncState state;
+    private final SyncListener listener;
+    private final AtomicLong byteCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param connection
+     *            the connection object
+     * @param app
+     *            application id
+     * @param state
+     *            the sync state, which is advanced page by page
+     * @param listener
+     *            the listener of the changes
+     */
+    DeltaSync(Connection connection, long app, SyncState state, SyncListener listener) {
+        this.connection = connection;
+        this.app = app;
+        this.state = state;
+        this.listener = listener;
+    }
+
+    /**
+     * Runs the sync.
+     *
+     * @return the number of the changes delivered
+     * @throws DBException
+     */
+    int run() throws DBException {
+        String since = state.getUpdatedTime();
+        boolean full = since == null;
+        Map<Long, Long> known = state.getRevisions();
+        if (!full && known.isEmpty() && state.getKnownCount() > 0) {
+            throw new DBException("the revisions of the known records are not restored");
+        }
+        long startId = state.getLastId();
+        if (startId == 0) {
+            probeLatest(since);
+        }
+        Set<Long> seen = full ? new HashSet<Long>() : null;
+        int count = 0;
+
+        while (true) {
+            List<Record> records = connection.selectRecords(app, buildQuery(since), null, byteCount);
+            List<RecordChange> changes = new ArrayList<RecordChange>();
+            for (Record record : records) {
+                long id = record.getId();
+                if (seen != null) {
+                    seen.add(id);
+                }
+                Long revision = state.getRevision(id);
+                if (revision != null && revision.longValue() == revisionOf(record)) {
+                    continue;
+                }
+                changes.add(new RecordChange(revision == null ? RecordChange.Type.ADDED
+                        : RecordChange.Type.UPDATED, id, record));
+            }
+
+            if (!changes.isEmpty()) {
+                listener.onChanges(app, changes);
+            }
+            for (RecordChange change : changes) {
+                state.putRevision(change.getId(), revisionOf(change.getRecord()));
+            }
+            if (!records.isEmpty()) {
+                state.setLastId(records.get(records.size() - 1).getId());
+            }
+            count += changes.size();
+            if (records.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+
+        Set<Long> deleted = new HashSet<Long>();
+        if (full) {
+            // the ids up to the start of a resumed sync are checked next time
+            for (Long id : known.keySet()) {
+                if (id.longValue() > startId && !seen.contains(id)) {
+                    deleted.add(id);
+                }
+            }
+        } else if (!known.isEmpty()) {
+            deleted.addAll(state.getRevisions().keySet());
+            deleted.removeAll(scanIds());
+        }
+        count += deliverDeleted(deleted);
+
+        state.complete();
+        return count;
+    }
+
+    /**
+     * Reads the latest updated time of the application before the pages, and
+     * finds the field of the updated time if not known yet.
+     *
+     * @param since
+     *            the start time, or null if all the records are read
+     * @throws DBException
+     */
+    private void probeLatest(String since) throws DBException {
+        String updatedField = state.getUpdatedField();
+        if (updatedField == null) {
+            List<Record> records = connection.selectRecords(app, "limit 1", null, byteCount);
+            if (records.isEmpty()) {
+                state.setLatest(since);
+                return;
+            }
+            updatedField = findUpdatedTimeField(records.get(0));
+            if (updatedField == null) {
+                state.setLatest(since);
+                return;
+            }
+            state.setUpdatedField(updatedField);
+        }
+        List<Record> records = connection.selectRecords(app, "order by " + updatedField
+                + " desc limit 1", new String[] { updatedField }, byteCount);
+        String latest = records.isEmpty() ? null : records.get(0).getString(updatedField);
+        state.setLatest(latest != null ? latest : since);
+    }
+
+    /**
+     * Builds the query of the next page.
+     *
+     * @param since
+     *            the start time, or null to read all the records
+     * @return query string
+     */
+    private String buildQuery(String since) {
+        StringBuilder sb = new StringBuilder();
+        if (since != null) {
+            sb.append(state.getUpdatedField());
+            sb.append(" >= \"");
+            sb.append(since);
+            sb.append("\" and ");
+        }
+        sb.append("$id > ");
+        sb.append(state.getLastId());
+        sb.append(" order by $id asc limit ");
+        sb.append(PAGE_SIZE);
+        return sb.toString();
+    }
+
+    /**
+     * Reads the ids of all the records.
+     *
+     * @return the ids
+     * @throws DBException
+     */
+    private Set<Long> scanIds() throws DBException {
+        Set<Long> ids = new HashSet<Long>();
+        SeekRecordIterator it = connection.selectAll(app, null, new String[] { "$id" });
+        try {
+            while (it.hasNext()) {
+                ids.add(it.next().getId());
+            }
+        } catch (DBIterationException e) {
+            throw e.getCause();
+        } finally {
+            it.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Delivers the deletions a page at a time.
+     *
+     * @param deleted
+     *            the ids of the deleted records
+     * @return the number of the changes delivered
+     * @throws DBException
+     */
+    private int deliverDeleted(Set<Long> deleted) throws DBException {
+        List<Long> ids = new ArrayList<Long>(deleted);
+        Collections.sort(ids);
+        for (int i = 0; i < ids.size(); i += PAGE_SIZE) {
+            List<RecordChange> changes = new ArrayList<RecordChange>();
+            for (Long id : ids.subList(i, Math.min(i + PAGE_SIZE, ids.size()))) {
+                changes.add(new RecordChange(RecordChange.Type.DELETED, id, null));
+            }
+            listener.onChanges(app, changes);
+            for (RecordChange change : changes) {
+                state.removeRevision(change.getId());
+            }
+        }
+        return ids.size();
+    }
+
+    /**
+     * @param record
+     *            the record
+     * @return the revision, or -1 if unknown
+     */
+    private static long revisionOf(Record record) {
+        Long revision = record.getRevision();
+        return revision == null ? -1 : revision.longValue();
+    }
+
+    /**
+     * Finds the field of the updated time.
+     *
+     * @param record
+     *            a record
+     * @return the field name, or null if not found
+     */
+    private static String findUpdatedTimeField(Record record) {
+        for (Map.Entry<String, Field> entry : record.getEntrySet()) {
+            if (entry.getValue().getFieldType() == FieldType.UPDATED_TIME) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.io.IOException;
+
+/**
+ * Receives the content of a downloaded file block by block.
+ *
+ */
+public interface DownloadHandler {
+
+    /**
+     * Handles a block of the file. The buffer is reused after this method
+     * returns.
+     * 
+     * @param buffer
+     *            the buffer holding the block
+     * @param offset
+     *            the start offset of the block in the buffer
+     * @param length
+     *            the length of the block
+     * @throws IOException
+     */
+    public void handle(byte[] buffer, int offset, int length) throws IOException;
+}
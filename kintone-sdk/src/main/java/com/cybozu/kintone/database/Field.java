@@ -78,6 +78,9 @@ public class Field {
      * @return field value
      */
     public Object getValue() {
+        if (value instanceof LazyValue) {
+            value = ((LazyValue) value).decode();
+        }
         return value;
     }
 
@@ -86,7 +89,7 @@ public class Field {
      * @return true if the value is empty
      */
     public boolean isEmpty() {
-        return value == null;
+        return getValue() == null;
     }
 
     /**
@@ -102,13 +105,7 @@ public class Field {
      * @return string object
      */
     public String getAsString() {
-        if (isEmpty()) return null;
-        
-        if (value instanceof String) {
-            return (String) value;
-        } else {
-            return value.toString();
-        }
+        return asString(getValue());
     }
 
     /**
@@ -116,20 +113,7 @@ public class Field {
      * @return long object
      */
     public Long getAsLong() {
-        if (isEmpty()) return null;
-        
-        if (value instanceof Long) {
-            return (Long) value;
-        }
-        
-        if (value instanceof String) {
-            String strVal = (String) value;
-            try {
-                return Long.valueOf(strVal);
-            } catch (NumberFormatException e) {
-            }
-        }
-        throw new TypeMismatchException();
+        return asLong(getValue());
     }
 
     /**
@@ -138,12 +122,7 @@ public class Field {
      */
     @SuppressWarnings("unchecked")
     public List<String> getAsStringList() {
-        if (isEmpty()) return null;
-        
-        if (value instanceof List) {
-            return (List<String>) value;
-        }
-        throw new TypeMismatchException();
+        return (List<String>) asList(getValue());
     }
 
     /**
@@ -151,12 +130,7 @@ public class Field {
      * @return user info object
      */
     public UserDto getAsUserInfo() {
-        if (isEmpty()) return null;
-        
-        if (value instanceof UserDto) {
-            return (UserDto) value;
-        }
-        throw new TypeMismatchException();
+        return asUserInfo(getValue());
     }
 
     /**
@@ -165,12 +139,7 @@ public class Field {
      */
     @SuppressWarnings("unchecked")
     public List<FileDto> getAsFileList() {
-        if (isEmpty()) return null;
-        
-        if (value instanceof List) {
-            return (List<FileDto>) value;
-        }
-        throw new TypeMismatchException();
+        return (List<FileDto>) asList(getValue());
     }
 
     /**
@@ -179,12 +148,7 @@ public class Field {
      */
     @SuppressWarnings("unchecked")
     public List<UserDto> getAsUserList() {
-        if (isEmpty()) return null;
-        
-        if (value instanceof List) {
-            return (List<UserDto>) value;
-        }
-        throw new TypeMismatchException();
+        return (List<UserDto>) asList(getValue());
     }
     
     /**
@@ -193,10 +157,65 @@ public class Field {
      */
     @SuppressWarnings("unchecked")
     public List<Record> getAsSubtable() {
-        if (isEmpty()) return null;
-        
+        return (List<Record>) asList(getValue());
+    }
+
+    /**
+     * Converts a field value to string object.
+     * @param value field value
+     * @return string object
+     */
+    static String asString(Object value) {
+        if (value == null) return null;
+        if (value instanceof String) {
+            return (String) value;
+        } else {
+            return value.toString();
+        }
+    }
+
+    /**
+     * Converts a field value to long object.
+     * @param value field value
+     * @return long object
+     */
+    static Long asLong(Object value) {
+        if (value == null) return null;
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        if (value instanceof String) {
+            String strVal = (String) value;
+            try {
+                return Long.valueOf(strVal);
+            } catch (NumberFormatException e) {
+            }
+        }
+        throw new TypeMismatchException();
+    }
+
+    /**
+     * Converts a field value to list object.
+     * @param value field value
+     * @return list object
+     */
+    static List<?> asList(Object value) {
+        if (value == null) return null;
         if (value instanceof List) {
-            return (List<Record>) value;
+            return (List<?>) value;
+        }
+        throw new TypeMismatchException();
+    }
+
+    /**
+     * Converts a field value to user info object.
+     * @param value field value
+     * @return user info object
+     */
+    static UserDto asUserInfo(Object value) {
+        if (value == null) return null;
+        if (value instanceof UserDto) {
+            return (UserDto) value;
         }
         throw new TypeMismatchException();
     }
@@ -14,6 +14,9 @@
 
 package com.cybozu.kintone.database;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Defines the field types which kintone official api provides.
  * 
@@ -49,14 +52,22 @@ public enum FieldType {
     __REVISION__,
     __ID__;
 
-    public static FieldType getEnum(String str) {
-        FieldType[] values = FieldType.values();
+    private static final Map<String, FieldType> TYPES = new HashMap<String, FieldType>();
 
-        for (FieldType value : values) {
-            if (str.equals(value.toString())) {
-                return value;
-            }
+    static {
+        for (FieldType value : FieldType.values()) {
+            TYPES.put(value.toString(), value);
         }
-        return null;
+    }
+
+    /**
+     * Gets the field type by its name in the json.
+     * 
+     * @param str
+     *            the type name
+     * @return the field type, or null if unknown
+     */
+    public static FieldType getEnum(String str) {
+        return TYPES.get(str);
     }
 }
@@ -0,0 +1,469 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A size-bounded disk cache of the downloaded files keyed by the file key.
+ *
+ * The entries are kept in the least recently used order and the oldest ones
+ * are deleted when the total size exceeds the limit. The index is recorded in
+ * a journal file in the cache directory, so the cache survives restarts. A
+ * file is downloaded into a temporary file first and renamed into place when
+ * it is complete, so a reader never sees a partial file; the journal is
+ * rewritten the same way. A file larger than the limit is not cached. The
+ * directory should be dedicated to the cache, since the files in it which
+ * look like the ones of the cache but are not in the index are deleted when
+ * the cache is opened. Set the cache to a connection with
+ * {@link Connection#setFileCache(FileCache)}.
+ *
+ */
+public class FileCache implements Closeable {
+    public static final long DEFAULT_MAX_SIZE = 50 * 1024 * 1024L;
+
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String MAGIC = "kintone.FileCache 1";
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TMP_PREFIX = "tmp";
+    private static final int COMPACT_THRESHOLD = 2000;
+
+    private final File directory;
+    private final long maxSize;
+    private final LinkedHashMap<String, Long> entries =
+            new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    private Writer journal;
+    private long size;
+    private int redundantCount;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Constructor
+     *
+     * @param directory
+     *            the cache directory, used by this cache only
+     * @throws IOException
+     */
+    public FileCache(File directory) throws IOException {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param directory
+     *            the cache directory, used by this cache only
+     * @param maxSize
+     *            the maximum total size of the files in bytes
+     * @throws IOException
+     */
+    public FileCache(File directory, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        readJournal();
+        deleteUnknownFiles();
+        rebuildJournal();
+    }
+
+    /**
+     * Gets the cached file. The file belongs to the cache and may be deleted
+     * when it is evicted, so read it right away and do not modify it.
+     *
+     * @param key
+     *            file key
+     * @return the file, or null if not cached
+     * @throws IOException
+     */
+    public synchronized File get(String key) throws IOException {
+        checkNotClosed();
+        File file = getFile(key);
+        Long length = entries.get(key);
+        if (length == null || !file.isFile()) {
+            if (length != null) {
+                entries.remove(key);
+                size -= length.longValue();
+                appendJournal(REMOVE, key);
+            }
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        appendJournal(READ, key);
+        return file;
+    }
+
+    /**
+     * Creates a temporary file in the cache directory, to be passed to
+     * {@link #put(String, File)} once it is complete.
+     *
+     * @return the temporary file
+     * @throws IOException
+     */
+    public File createTempFile() throws IOException {
+        return File.createTempFile(TMP_PREFIX, null, directory);
+    }
+
+    /**
+     * Stores a complete file, moving it into the cache and evicting the least
+     * recently used files if needed. A file larger than the maximum size is
+     * not cached and the temporary file is returned as it is, to be deleted
+     * by the caller.
+     *
+     * @param key
+     *            file key
+     * @param tempFile
+     *            the file created by {@link #createTempFile()}
+     * @return the cached file, or the temporary file if it is too large
+     * @throws IOException
+     */
+    public synchronized File put(String key, File tempFile) throws IOException {
+        checkNotClosed();
+        if (key.length() == 0 || key.indexOf(' ') >= 0 || key.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("invalid key: " + key);
+        }
+        if (tempFile.length() > maxSize) {
+            return tempFile;
+        }
+        File file = getFile(key);
+        Long old = entries.remove(key);
+        if (old != null) {
+            size -= old.longValue();
+        }
+        FileRecordStore.replace(tempFile, file);
+        long length = file.length();
+        entries.put(key, Long.valueOf(length));
+        size += length;
+        appendJournal(CLEAN, key + " " + length);
+        trimToSize();
+        return file;
+    }
+
+    /**
+     * Removes the file.
+     *
+     * @param key
+     *            file key
+     * @throws IOException
+     */
+    public synchronized void remove(String key) throws IOException {
+        checkNotClosed();
+        Long length = entries.remove(key);
+        if (length != null) {
+            getFile(key).delete();
+            size -= length.longValue();
+            appendJournal(REMOVE, key);
+        }
+    }
+
+    /**
+     * Removes all the files.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        checkNotClosed();
+        for (String key : entries.keySet()) {
+            getFile(key).delete();
+        }
+        entries.clear();
+        size = 0;
+        rebuildJournal();
+    }
+
+    /**
+     * Closes the journal. The cache can not be used after this.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * @return the cache directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the maximum total size of the files in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the total size of the cached files in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of the cached files
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of the requests served from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of the requests not found in the cache
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of the files evicted to keep the size limit
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Deletes the least recently used files until the total size fits the
+     * limit.
+     *
+     * @throws IOException
+     */
+    private void trimToSize() throws IOException {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            getFile(eldest.getKey()).delete();
+            size -= eldest.getValue().longValue();
+            evictionCount++;
+            appendJournal(REMOVE, eldest.getKey());
+        }
+    }
+
+    /**
+     * Reads the journal and restores the entries in the access order.
+     */
+    private void readJournal() {
+        File file = new File(directory, JOURNAL);
+        try {
+            FileRecordStore.recover(file);
+        } catch (IOException e) {
+            return;
+        }
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+            try {
+                if (!MAGIC.equals(reader.readLine())) {
+                    return;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ");
+                    if (parts.length == 3 && parts[0].equals(CLEAN)) {
+                        entries.put(parts[1], Long.valueOf(parts[2]));
+                    } else if (parts.length == 2 && parts[0].equals(READ)) {
+                        entries.get(parts[1]);
+                    } else if (parts.length == 2 && parts[0].equals(REMOVE)) {
+                        entries.remove(parts[1]);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            entries.clear();
+        } catch (NumberFormatException e) {
+            entries.clear();
+        }
+
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            File cached = getFile(entry.getKey());
+            if (!cached.isFile() || cached.length() != entry.getValue().longValue()) {
+                it.remove();
+            } else {
+                size += entry.getValue().longValue();
+            }
+        }
+    }
+
+    /**
+     * Deletes the files of the cache which are not in the index, such as the
+     * temporary files of the interrupted downloads. The other files in the
+     * directory are left as they are.
+     */
+    private void deleteUnknownFiles() {
+        Set<String> names = new HashSet<String>();
+        names.add(JOURNAL);
+        for (String key : entries.keySet()) {
+            names.add(getFile(key).getName());
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!names.contains(name) && isCacheFile(name)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Tells whether the file name is the one of the cached files, the
+     * temporary files or the journal.
+     *
+     * @param name
+     *            file name
+     * @return true if the file belongs to the cache
+     */
+    private static boolean isCacheFile(String name) {
+        if (name.startsWith(JOURNAL)) {
+            return true;
+        }
+        if (name.startsWith(TMP_PREFIX) && name.endsWith(".tmp")) {
+            return true;
+        }
+        return name.matches("[0-9a-f]{32}\\" + FILE_SUFFIX + "(\\.bak)?");
+    }
+
+    /**
+     * Writes the journal with the current entries only.
+     *
+     * @throws IOException
+     */
+    private void rebuildJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        File tmp = new File(directory, JOURNAL_TMP);
+        FileOutputStream os = new FileOutputStream(tmp);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+        try {
+            writer.write(MAGIC + "\n");
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+            writer.flush();
+            os.getFD().sync();
+        } finally {
+            writer.close();
+        }
+        File file = new File(directory, JOURNAL);
+        FileRecordStore.replace(tmp, file);
+        journal = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), "UTF-8"));
+        redundantCount = 0;
+    }
+
+    /**
+     * Appends an operation to the journal, compacting it when it has grown.
+     *
+     * @param op
+     *            the operation
+     * @param args
+     *            the arguments of the operation
+     * @throws IOException
+     */
+    private void appendJournal(String op, String args) throws IOException {
+        journal.write(op + " " + args + "\n");
+        journal.flush();
+        if (!op.equals(CLEAN)) {
+            redundantCount++;
+        }
+        if (redundantCount >= COMPACT_THRESHOLD && redundantCount >= entries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    /**
+     * @throws IOException
+     *             if the cache is closed
+     */
+    private void checkNotClosed() throws IOException {
+        if (journal == null) {
+            throw new IOException("cache is closed");
+        }
+    }
+
+    /**
+     * Gets the path of the file. The key is hashed since the file keys are
+     * not guaranteed to be valid file names.
+     *
+     * @param key
+     *            file key
+     * @return the path of the file
+     */
+    private File getFile(String key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (byte b : digest.digest(key.getBytes("UTF-8"))) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new File(directory, sb.toString() + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,422 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A local record store backed by the files of a directory, for the plain JVM.
+ *
+ * Each application has a log file in which every change is appended and
+ * followed by a commit line; a change without its commit line, left by a
+ * crash, is ignored when the log is read. The log is rewritten with the
+ * current records only when it has grown well beyond them, into a temporary
+ * file which then replaces the log. The records are
+ * held in memory as json strings while the store is open.
+ *
+ */
+public class FileRecordStore implements LocalRecordStore {
+    private static final String PUT = "P";
+    private static final String DELETE = "D";
+    private static final String STATE = "S";
+    private static final String COMMIT = "C";
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private final File directory;
+    private final Map<Long, AppLog> apps = new HashMap<Long, AppLog>();
+    private final JsonParser parser = new JsonParser();
+    private boolean closed;
+
+    /**
+     * The records and the log of an application.
+     */
+    private static class AppLog {
+        private final TreeMap<Long, String> records = new TreeMap<Long, String>();
+        private final Map<Long, Long> revisions = new HashMap<Long, Long>();
+        private String state;
+        private Writer writer;
+        private int lineCount;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param directory
+     *            the directory of the log files
+     * @throws DBException
+     */
+    public FileRecordStore(File directory) throws DBException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new DBException("cannot create directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized void putRecords(long app, List<Record> records) throws DBException {
+        AppLog log = open(app);
+        List<String> lines = new ArrayList<String>();
+        Map<Long, String> jsons = new HashMap<Long, String>();
+        try {
+            for (Record record : records) {
+                String json = parser.recordToStoredJson(record);
+                jsons.put(record.getId(), json);
+                lines.add(PUT + " " + record.getId() + " " + revisionOf(record) + " " + json);
+            }
+        } catch (IOException e) {
+            throw new DBException(e, "failed to encode the record");
+        }
+        append(app, log, lines);
+        for (Record record : records) {
+            log.records.put(record.getId(), jsons.get(record.getId()));
+            log.revisions.put(record.getId(), revisionOf(record));
+        }
+    }
+
+    @Override
+    public synchronized void deleteRecords(long app, Collection<Long> ids) throws DBException {
+        AppLog log = open(app);
+        List<String> lines = new ArrayList<String>();
+        for (Long id : ids) {
+            if (log.records.containsKey(id)) {
+                lines.add(DELETE + " " + id);
+            }
+        }
+        if (lines.isEmpty()) {
+            return;
+        }
+        append(app, log, lines);
+        for (Long id : ids) {
+            log.records.remove(id);
+            log.revisions.remove(id);
+        }
+    }
+
+    @Override
+    public synchronized Record getRecord(long app, long id) throws DBException {
+        String json = open(app).records.get(id);
+        return json == null ? null : toRecord(json);
+    }
+
+    @Override
+    public synchronized List<Record> selectRecords(long app, RecordFilter filter) throws DBException {
+        List<Record> result = new ArrayList<Record>();
+        for (String json : open(app).records.values()) {
+            Record record = toRecord(json);
+            if (filter == null || filter.accept(record)) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<Long, Long> getRevisions(long app) throws DBException {
+        return new HashMap<Long, Long>(open(app).revisions);
+    }
+
+    @Override
+    public synchronized String getSyncState(long app) throws DBException {
+        return open(app).state;
+    }
+
+    @Override
+    public synchronized void setSyncState(long app, String state) throws DBException {
+        if (state != null && (state.indexOf('\n') >= 0 || state.indexOf('\r') >= 0)) {
+            throw new IllegalArgumentException("state must not contain line breaks");
+        }
+        AppLog log = open(app);
+        List<String> lines = new ArrayList<String>();
+        lines.add(state == null ? STATE : STATE + " " + state);
+        append(app, log, lines);
+        log.state = state;
+    }
+
+    @Override
+    public synchronized void clear(long app) throws DBException {
+        AppLog log = open(app);
+        log.records.clear();
+        log.revisions.clear();
+        log.state = null;
+        rewrite(app, log);
+    }
+
+    /**
+     * Closes the log files. The store can not be used after this.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (AppLog log : apps.values()) {
+            log.writer.close();
+        }
+        apps.clear();
+    }
+
+    /**
+     * Opens the log of the application, reading it on the first use.
+     *
+     * @param app
+     *            application id
+     * @return the log
+     * @throws DBException
+     */
+    private AppLog open(long app) throws DBException {
+        if (closed) {
+            throw new DBException("store is closed");
+        }
+        AppLog log = apps.get(app);
+        if (log != null) {
+            return log;
+        }
+        log = new AppLog();
+        File file = getFile(app);
+        try {
+            recover(file);
+            if (file.isFile()) {
+                read(file, log);
+            }
+            rewrite(app, log);
+        } catch (IOException e) {
+            throw new DBException(e, "cannot read " + file);
+        }
+        apps.put(app, log);
+        return log;
+    }
+
+    /**
+     * Replays the committed changes of the log.
+     *
+     * @param file
+     *            the log file
+     * @param log
+     *            the log to be filled
+     * @throws IOException
+     */
+    private void read(File file, AppLog log) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            List<String> pending = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.equals(COMMIT)) {
+                    pending.add(line);
+                    continue;
+                }
+                for (String change : pending) {
+                    apply(change, log);
+                }
+                pending.clear();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Applies a change line to the log.
+     *
+     * @param line
+     *            the change line
+     * @param log
+     *            the log
+     */
+    private void apply(String line, AppLog log) {
+        if (line.startsWith(PUT + " ")) {
+            String[] parts = line.split(" ", 4);
+            Long id = Long.valueOf(parts[1]);
+            log.records.put(id, parts[3]);
+            log.revisions.put(id, Long.valueOf(parts[2]));
+        } else if (line.startsWith(DELETE + " ")) {
+            Long id = Long.valueOf(line.substring(2));
+            log.records.remove(id);
+            log.revisions.remove(id);
+        } else if (line.equals(STATE)) {
+            log.state = null;
+        } else if (line.startsWith(STATE + " ")) {
+            log.state = line.substring(2);
+        }
+    }
+
+    /**
+     * Appends the change lines and a commit line, compacting the log when it
+     * has grown.
+     *
+     * @param app
+     *            application id
+     * @param log
+     *            the log
+     * @param lines
+     *            the change lines
+     * @throws DBException
+     */
+    private void append(long app, AppLog log, List<String> lines) throws DBException {
+        try {
+            for (String line : lines) {
+                log.writer.write(line);
+                log.writer.write("\n");
+            }
+            log.writer.write(COMMIT + "\n");
+            log.writer.flush();
+        } catch (IOException e) {
+            throw new DBException(e, "cannot write " + getFile(app));
+        }
+        log.lineCount += lines.size() + 1;
+        if (log.lineCount > COMPACT_THRESHOLD + 2 * log.records.size()) {
+            rewrite(app, log);
+        }
+    }
+
+    /**
+     * Rewrites the log with the current records and state only.
+     *
+     * @param app
+     *            application id
+     * @param log
+     *            the log
+     * @throws DBException
+     */
+    private void rewrite(long app, AppLog log) throws DBException {
+        File file = getFile(app);
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try {
+            if (log.writer != null) {
+                log.writer.close();
+                log.writer = null;
+            }
+            FileOutputStream os = new FileOutputStream(tmp);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+            try {
+                for (Map.Entry<Long, String> entry : log.records.entrySet()) {
+                    writer.write(PUT + " " + entry.getKey() + " "
+                            + log.revisions.get(entry.getKey()) + " " + entry.getValue() + "\n");
+                }
+                if (log.state != null) {
+                    writer.write(STATE + " " + log.state + "\n");
+                }
+                writer.write(COMMIT + "\n");
+                writer.flush();
+                os.getFD().sync();
+            } finally {
+                writer.close();
+            }
+            replace(tmp, file);
+            log.writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), "UTF-8"));
+            log.lineCount = log.records.size() + 2;
+        } catch (IOException e) {
+            throw new DBException(e, "cannot write " + file);
+        }
+    }
+
+    /**
+     * Replaces the file with the new one. The rename over the file is atomic
+     * on POSIX file systems; where it is refused, the old file is kept as a
+     * backup until the new one is in place, and {@link #recover(File)} brings
+     * it back after a crash in between.
+     *
+     * @param tmp
+     *            the new file
+     * @param file
+     *            the file to be replaced
+     * @throws IOException
+     */
+    static void replace(File tmp, File file) throws IOException {
+        if (tmp.renameTo(file)) {
+            return;
+        }
+        File bak = new File(file.getPath() + ".bak");
+        bak.delete();
+        if (file.exists() && !file.renameTo(bak)) {
+            throw new IOException("cannot replace " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            bak.renameTo(file);
+            throw new IOException("cannot rename " + tmp);
+        }
+        bak.delete();
+    }
+
+    /**
+     * Restores the backup left by {@link #replace(File, File)} if the file
+     * has not been replaced.
+     *
+     * @param file
+     *            the file
+     * @throws IOException
+     */
+    static void recover(File file) throws IOException {
+        File bak = new File(file.getPath() + ".bak");
+        if (!bak.exists()) {
+            return;
+        }
+        if (file.exists()) {
+            bak.delete();
+        } else if (!bak.renameTo(file)) {
+            throw new IOException("cannot restore " + bak);
+        }
+    }
+
+    /**
+     * Reads the record from the stored json string.
+     *
+     * @param json
+     *            the json string
+     * @return the record
+     * @throws DBException
+     */
+    private Record toRecord(String json) throws DBException {
+        try {
+            return parser.storedJsonToRecord(json);
+        } catch (IOException e) {
+            throw new DBException(e, "failed to decode the record");
+        }
+    }
+
+    /**
+     * @param record
+     *            the record
+     * @return the revision, or -1 if unknown
+     */
+    private static long revisionOf(Record record) {
+        Long revision = record.getRevision();
+        return revision == null ? -1 : revision.longValue();
+    }
+
+    /**
+     * @param app
+     *            application id
+     * @return the log file of the application
+     */
+    private File getFile(long app) {
+        return new File(directory, "app-" + app + ".log");
+    }
+}
@@ -0,0 +1,58 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * An interface which opens the HTTP connections used by {@link Connection}.
+ * Implement this to replace the way the requests are sent, for example with a
+ * pooled client or a local fake server.
+ *
+ */
+public interface HttpTransport {
+
+    /**
+     * Opens a connection to the url. The returned connection is not connected
+     * yet; the caller sets the headers and the request method.
+     * 
+     * @param url
+     *            the url of the api
+     * @param proxy
+     *            the proxy, or null if no proxy is used
+     * @return the connection object
+     * @throws IOException
+     */
+    public HttpURLConnection open(URL url, Proxy proxy) throws IOException;
+
+    /**
+     * Releases the connection after the response was consumed.
+     * 
+     * @param conn
+     *            the connection object returned by {@link #open(URL, Proxy)}
+     * @param reusable
+     *            true if the response was read to the end and the underlying
+     *            socket can be kept alive
+     */
+    public void release(HttpURLConnection conn, boolean reusable);
+
+    /**
+     * Releases all the resources held by this transport.
+     */
+    public void close();
+}
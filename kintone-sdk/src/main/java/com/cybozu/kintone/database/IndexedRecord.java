@@ -0,0 +1,330 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A record which keeps the field values in an array ordered by a shared
+ * {@link RecordSchema}, instead of a map of the field objects. The parser
+ * creates these when {@link Connection#setIndexedRecords(boolean)} is set.
+ *
+ * The fields are read by name as with {@link Record}, or by the position
+ * found by {@link RecordSchema#indexOf(String)}. The field objects of
+ * {@link #getField(String)} and the entry set are created on demand and read
+ * and write the values in the array. Adding a field, or changing the type,
+ * the name or the lazy uploader of a field object, turns the record into the
+ * map layout of {@link Record}; the field objects already got then read and
+ * write the fields of the map.
+ *
+ */
+public class IndexedRecord extends Record {
+    private RecordSchema schema;
+    private Object[] values;
+
+    /**
+     * Constructor
+     *
+     * @param schema
+     *            the schema shared by the records of the same shape
+     * @param values
+     *            the field values in the order of the schema
+     * @param id
+     *            record id
+     * @param revision
+     *            revision number
+     */
+    IndexedRecord(RecordSchema schema, Object[] values, long id, long revision) {
+        super(id, revision);
+        if (values.length != schema.size()) {
+            throw new IllegalArgumentException("values do not match the schema");
+        }
+        this.schema = schema;
+        this.values = values;
+    }
+
+    /**
+     * @return the schema, or null if the record was turned into the map
+     *         layout
+     */
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets the field value at the position as string.
+     *
+     * @param index
+     *            the position in the schema
+     * @return the string value of the field
+     */
+    public String getString(int index) {
+        return Field.asString(getValue(index));
+    }
+
+    /**
+     * Gets the field value at the position as long.
+     *
+     * @param index
+     *            the position in the schema
+     * @return the long value of the field
+     */
+    public Long getLong(int index) {
+        return Field.asLong(getValue(index));
+    }
+
+    /**
+     * Returns true if the field value at the position is empty.
+     *
+     * @param index
+     *            the position in the schema
+     * @return true if the field value is empty
+     */
+    public boolean isEmpty(int index) {
+        return getValue(index) == null;
+    }
+
+    /**
+     * Gets the field value at the position.
+     *
+     * @param index
+     *            the position in the schema
+     * @return the field value
+     */
+    public Object getValue(int index) {
+        if (schema == null) {
+            throw new IllegalStateException("the record is no longer indexed");
+        }
+        return valueAt(index);
+    }
+
+    /**
+     * Gets the value at the position, converting it if it is deferred.
+     */
+    private Object valueAt(int index) {
+        Object value = values[index];
+        if (value instanceof LazyValue) {
+            value = ((LazyValue) value).decode();
+            values[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    Object getFieldValue(String name) {
+        if (schema != null) {
+            int index = schema.indexOf(name);
+            if (index >= 0) {
+                return valueAt(index);
+            }
+        }
+        return super.getFieldValue(name);
+    }
+
+    @Override
+    public boolean hasField(String name) {
+        if (schema != null) {
+            return schema.indexOf(name) >= 0;
+        }
+        return super.hasField(name);
+    }
+
+    @Override
+    public Field getField(String name) {
+        if (schema != null) {
+            int index = schema.indexOf(name);
+            return index < 0 ? null : new IndexedField(index);
+        }
+        return super.getField(name);
+    }
+
+    @Override
+    public FieldType getFieldType(String name) {
+        if (schema != null) {
+            int index = schema.indexOf(name);
+            if (index >= 0) {
+                return schema.getFieldType(index);
+            }
+        }
+        return super.getFieldType(name);
+    }
+
+    @Override
+    public Set<String> getFieldNames() {
+        if (schema != null) {
+            return schema.getFieldNames();
+        }
+        return super.getFieldNames();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Field>> getEntrySet() {
+        if (schema != null) {
+            Map<String, Field> fields = new LinkedHashMap<String, Field>();
+            for (int i = 0; i < values.length; i++) {
+                fields.put(schema.getName(i), new IndexedField(i));
+            }
+            return Collections.unmodifiableMap(fields).entrySet();
+        }
+        return super.getEntrySet();
+    }
+
+    @Override
+    public void addField(String name, Field field) {
+        if (field.getFieldType() != FieldType.__ID__
+                && field.getFieldType() != FieldType.__REVISION__) {
+            toMapLayout();
+        }
+        super.addField(name, field);
+    }
+
+    /**
+     * Turns the record into the map layout of {@link Record}.
+     */
+    private void toMapLayout() {
+        if (schema == null) {
+            return;
+        }
+        RecordSchema old = schema;
+        Object[] oldValues = values;
+        schema = null;
+        values = null;
+        for (int i = 0; i < oldValues.length; i++) {
+            String oldName = old.getName(i);
+            super.addField(oldName, new Field(oldName, old.getFieldType(i), oldValues[i]));
+        }
+    }
+
+    @Override
+    public Object clone() {
+        if (schema != null) {
+            return new IndexedRecord(schema, values.clone(), getId(), getRevision());
+        }
+        return super.clone();
+    }
+
+    /**
+     * A field object which reads and writes the value at the position while
+     * the record is indexed, and the field of the map layout afterwards.
+     */
+    private class IndexedField extends Field {
+        private final int index;
+        private final String fieldName;
+
+        IndexedField(int index) {
+            super(schema.getName(index), schema.getFieldType(index), null);
+            this.index = index;
+            this.fieldName = schema.getName(index);
+        }
+
+        /**
+         * @return the field of the map layout, or null while the record is
+         *         indexed or if the field was removed from the map
+         */
+        private Field mapField() {
+            return schema == null ? IndexedRecord.super.getField(fieldName) : null;
+        }
+
+        /**
+         * Turns the record into the map layout and gets the field of it.
+         */
+        private Field detach() {
+            toMapLayout();
+            return mapField();
+        }
+
+        @Override
+        public String getName() {
+            Field field = mapField();
+            return field != null ? field.getName() : super.getName();
+        }
+
+        @Override
+        public void setName(String name) {
+            Field field = detach();
+            if (field != null) {
+                field.setName(name);
+            } else {
+                super.setName(name);
+            }
+        }
+
+        @Override
+        public FieldType getFieldType() {
+            if (schema != null) {
+                return schema.getFieldType(index);
+            }
+            Field field = mapField();
+            return field != null ? field.getFieldType() : super.getFieldType();
+        }
+
+        @Override
+        public void setFieldType(FieldType fieldType) {
+            Field field = detach();
+            if (field != null) {
+                field.setFieldType(fieldType);
+            } else {
+                super.setFieldType(fieldType);
+            }
+        }
+
+        @Override
+        public Object getValue() {
+            if (schema != null) {
+                return valueAt(index);
+            }
+            Field field = mapField();
+            return field != null ? field.getValue() : super.getValue();
+        }
+
+        @Override
+        public void setValue(Object value) {
+            if (schema != null) {
+                values[index] = value;
+                return;
+            }
+            Field field = mapField();
+            if (field != null) {
+                field.setValue(value);
+            } else {
+                super.setValue(value);
+            }
+        }
+
+        @Override
+        public boolean isLazyUpload() {
+            Field field = mapField();
+            return field != null ? field.isLazyUpload() : super.isLazyUpload();
+        }
+
+        @Override
+        public void setLazyUploader(LazyUploader lazyUploader) {
+            Field field = detach();
+            if (field != null) {
+                field.setLazyUploader(lazyUploader);
+            } else {
+                super.setLazyUploader(lazyUploader);
+            }
+        }
+
+        @Override
+        public LazyUploader getLazyUploader() {
+            Field field = mapField();
+            return field != null ? field.getLazyUploader() : super.getLazyUploader();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * The shared Gson instance of the parser, with the type adapters of the data
+ * transfer objects written by hand, so the records are decoded without
+ * reflection. Gson is thread safe, so the instance is used by all threads.
+ *
+ */
+final class JsonAdapters {
+
+    static final Type STRING_COLLECTION = new TypeToken<Collection<String>>() {
+    }.getType();
+    static final Type USER_COLLECTION = new TypeToken<Collection<UserDto>>() {
+    }.getType();
+    static final Type FILE_COLLECTION = new TypeToken<Collection<FileDto>>() {
+    }.getType();
+    static final Type MENTION_COLLECTION = new TypeToken<Collection<MentionDto>>() {
+    }.getType();
+    static final Type APP_COLLECTION = new TypeToken<Collection<AppDto>>() {
+    }.getType();
+    static final Type LONG_LIST = new TypeToken<ArrayList<Long>>() {
+    }.getType();
+
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(UserDto.class, new UserAdapter().nullSafe())
+            .registerTypeAdapter(FileDto.class, new FileAdapter().nullSafe())
+            .registerTypeAdapter(MentionDto.class, new MentionAdapter().nullSafe())
+            .registerTypeAdapter(AppDto.class, new AppAdapter().nullSafe())
+            .registerTypeAdapter(Comment.class, new CommentAdapter().nullSafe())
+            .create();
+
+    private JsonAdapters() {
+    }
+
+    /**
+     * Reads a string property, which may be a number or a boolean.
+     */
+    private static String nextString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Reads a long property, which may be a string.
+     */
+    private static long nextLong(JsonReader in, long defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextLong();
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static DateFormat newDateFormat() {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        df.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return df;
+    }
+
+    /**
+     * Reads and writes {@link UserDto}.
+     */
+    static class UserAdapter extends TypeAdapter<UserDto> {
+        @Override
+        public void write(JsonWriter out, UserDto user) throws IOException {
+            out.beginObject();
+            writeString(out, "name", user.getName());
+            writeString(out, "code", user.getCode());
+            out.endObject();
+        }
+
+        @Override
+        public UserDto read(JsonReader in) throws IOException {
+            UserDto user = new UserDto();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("name")) {
+                    user.setName(nextString(in));
+                } else if (name.equals("code")) {
+                    user.setCode(nextString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    }
+
+    /**
+     * Reads and writes {@link FileDto}.
+     */
+    static class FileAdapter extends TypeAdapter<FileDto> {
+        @Override
+        public void write(JsonWriter out, FileDto file) throws IOException {
+            out.beginObject();
+            writeString(out, "contentType", file.getContentType());
+            writeString(out, "url", file.getUrl());
+            writeString(out, "fileKey", file.getFileKey());
+            writeString(out, "name", file.getName());
+            out.name("size").value(file.getSize());
+            out.endObject();
+        }
+
+        @Override
+        public FileDto read(JsonReader in) throws IOException {
+            FileDto file = new FileDto();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("contentType")) {
+                    file.setContentType(nextString(in));
+                } else if (name.equals("url")) {
+                    file.setUrl(nextString(in));
+                } else if (name.equals("fileKey")) {
+                    file.setFileKey(nextString(in));
+                } else if (name.equals("name")) {
+                    file.setName(nextString(in));
+                } else if (name.equals("size")) {
+                    file.setSize(nextLong(in, 0));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return file;
+        }
+    }
+
+    /**
+     * Reads and writes {@link MentionDto}.
+     */
+    static class MentionAdapter extends TypeAdapter<MentionDto> {
+        @Override
+        public void write(JsonWriter out, MentionDto mention) throws IOException {
+            out.beginObject();
+            writeString(out, "code", mention.getCode());
+            writeString(out, "type", mention.getType());
+            out.endObject();
+        }
+
+        @Override
+        public MentionDto read(JsonReader in) throws IOException {
+            MentionDto mention = new MentionDto();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("code")) {
+                    mention.setCode(nextString(in));
+                } else if (name.equals("type")) {
+                    mention.setType(nextString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return mention;
+        }
+    }
+
+    /**
+     * Reads and writes {@link AppDto}.
+     */
+    static class AppAdapter extends TypeAdapter<AppDto> {
+        private final UserAdapter userAdapter = new UserAdapter();
+
+        @Override
+        public void write(JsonWriter out, AppDto app) throws IOException {
+            out.beginObject();
+            out.name("appId").value(app.getAppId());
+            writeString(out, "code", app.getCode());
+            writeString(out, "name", app.getName());
+            writeString(out, "description", app.getDescription());
+            out.name("spaceId").value(app.getSpaceId());
+            out.name("threadId").value(app.getThreadId());
+            if (app.getCreator() != null) {
+                out.name("creator");
+                userAdapter.write(out, app.getCreator());
+            }
+            writeString(out, "createdAt", app.getCreatedAt());
+            if (app.getModifier() != null) {
+                out.name("modifier");
+                userAdapter.write(out, app.getModifier());
+            }
+            writeString(out, "modifiedAt", app.getModifiedAt());
+            out.endObject();
+        }
+
+        @Override
+        public AppDto read(JsonReader in) throws IOException {
+            AppDto app = new AppDto();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("appId")) {
+                    app.setAppId(nextLong(in, 0));
+                } else if (name.equals("code")) {
+                    app.setCode(nextString(in));
+                } else if (name.equals("name")) {
+                    app.setName(nextString(in));
+                } else if (name.equals("description")) {
+                    app.setDescription(nextString(in));
+                } else if (name.equals("spaceId")) {
+                    app.setSpaceId(nextLong(in, 0));
+                } else if (name.equals("threadId")) {
+                    app.setThreadId(nextLong(in, 0));
+                } else if (name.equals("creator")) {
+                    app.setCreator(readUser(in));
+                } else if (name.equals("createdAt")) {
+                    app.setCreatedAt(nextString(in));
+                } else if (name.equals("modifier")) {
+                    app.setModifier(readUser(in));
+                } else if (name.equals("modifiedAt")) {
+                    app.setModifiedAt(nextString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return app;
+        }
+
+        private UserDto readUser(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return userAdapter.read(in);
+        }
+    }
+
+    /**
+     * Reads and writes {@link Comment}.
+     */
+    static class CommentAdapter extends TypeAdapter<Comment> {
+        private final UserAdapter userAdapter = new UserAdapter();
+        private final MentionAdapter mentionAdapter = new MentionAdapter();
+
+        @Override
+        public void write(JsonWriter out, Comment comment) throws IOException {
+            out.beginObject();
+            out.name("id").value(comment.getId());
+            writeString(out, "text", comment.getText());
+            if (comment.getCreatedAt() != null) {
+                out.name("createdAt").value(newDateFormat().format(comment.getCreatedAt()));
+            }
+            if (comment.getCreator() != null) {
+                out.name("creator");
+                userAdapter.write(out, comment.getCreator());
+            }
+            if (comment.getMentions() != null) {
+                out.name("mentions").beginArray();
+                for (MentionDto mention : comment.getMentions()) {
+                    mentionAdapter.write(out, mention);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Comment read(JsonReader in) throws IOException {
+            long id = 0;
+            String text = null;
+            Date createdAt = null;
+            UserDto creator = null;
+            List<MentionDto> mentions = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else if (name.equals("id")) {
+                    id = in.nextLong();
+                } else if (name.equals("text")) {
+                    text = nextString(in);
+                } else if (name.equals("createdAt")) {
+                    createdAt = JsonParser.getDateTime(in.nextString());
+                } else if (name.equals("creator")) {
+                    creator = userAdapter.read(in);
+                } else if (name.equals("mentions")) {
+                    mentions = new ArrayList<MentionDto>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        mentions.add(in.peek() == JsonToken.NULL ? nextNull(in) : mentionAdapter.read(in));
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Comment(id, text, createdAt, creator, mentions);
+        }
+
+        private MentionDto nextNull(JsonReader in) throws IOException {
+            in.nextNull();
+            return null;
+        }
+    }
+}
@@ -35,18 +35,18 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.lang.reflect.Type;
+import java.io.StringWriter;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -61,10 +61,52 @@ import java.util.TimeZone;
  */
 public class JsonParser {
 
+    private boolean indexedRecords = false;
+    private boolean lazyFields = false;
+
     public JsonParser() {
 
     }
 
+    /**
+     * Returns true if the record readers create {@link IndexedRecord}s.
+     * @return true if the records are indexed
+     */
+    public boolean isIndexedRecords() {
+        return indexedRecords;
+    }
+
+    /**
+     * Sets whether the record readers create {@link IndexedRecord}s, which
+     * share the field names and types among the records of the same shape.
+     * @param indexedRecords
+     *            true to create the indexed records
+     */
+    public void setIndexedRecords(boolean indexedRecords) {
+        this.indexedRecords = indexedRecords;
+    }
+
+    /**
+     * Returns true if the lists, the users and the sub tables of the fields
+     * are converted when they are read.
+     * @return true if the fields are converted lazily
+     */
+    public boolean isLazyFields() {
+        return lazyFields;
+    }
+
+    /**
+     * Sets whether the lists, the users and the sub tables of the fields are
+     * kept as the json strings and converted when they are read, so the
+     * fields never read cost no conversion. A field read is parsed then, so
+     * this pays off when only some of the fields are read.
+     * @param lazyFields
+     *            true to convert the fields lazily
+     */
+    public void setLazyFields(boolean lazyFields) {
+        this.lazyFields = lazyFields;
+    }
+
     /**
      * Converts the json string to the error response object.
      * @param json
@@ -72,9 +114,8 @@ public class JsonParser {
      * @return error response object
      */
     public ErrorResponse jsonToErrorResponse(String json) {
-        Gson gson = new Gson();
         try {
-            return gson.fromJson(json, ErrorResponse.class);
+            return JsonAdapters.GSON.fromJson(json, ErrorResponse.class);
         } catch (JsonSyntaxException e) {
             return null;
         }
@@ -115,6 +156,71 @@ public class JsonParser {
         
         return rs;
     }
+
+    /**
+     * Reads the resultset object directly from the stream.
+     * @param con
+     *            a connection object
+     * @param is
+     *            the stream of a json string
+     * @return resultset object
+     * @throws IOException
+     */
+    public ResultSet jsonToResultSet(Connection con, InputStream is)
+            throws IOException {
+
+        ResultSet rs = new ResultSet(con);
+        RecordReader reader = new RecordReader(this, is);
+        try {
+            while (reader.hasNext()) {
+                rs.add(reader.next());
+            }
+            if (reader.getTotalCount() != null) {
+                rs.setTotalCount(reader.getTotalCount());
+            }
+        } finally {
+            reader.close();
+        }
+        return rs;
+    }
+
+    /**
+     * Reads the columnar resultset object directly from the stream.
+     * @param con
+     *            a connection object
+     * @param is
+     *            the stream of a json string
+     * @return columnar resultset object
+     * @throws IOException
+     */
+    public ColumnarResultSet jsonToColumnarResultSet(Connection con, InputStream is)
+            throws IOException {
+
+        ColumnarResultSet rs = new ColumnarResultSet(con);
+        RecordReader reader = new RecordReader(this, is);
+        try {
+            while (reader.hasNext()) {
+                reader.nextInto(rs);
+            }
+            if (reader.getTotalCount() != null) {
+                rs.setTotalCount(reader.getTotalCount());
+            }
+        } finally {
+            reader.close();
+        }
+        return rs;
+    }
+
+    /**
+     * Opens a reader which reads the records one by one from the stream.
+     * @param is
+     *            the stream of a json string
+     * @return the record reader
+     * @throws IOException
+     */
+    public RecordReader openRecordReader(InputStream is) throws IOException {
+        return new RecordReader(this, is);
+    }
     
     /**
      * Reads and parses each record element.
@@ -152,20 +258,80 @@ public class JsonParser {
      */
     private Field readField(String fieldName, JsonElement fieldElem) throws IOException {
 
-        Field field = null;
-
-        
         if (!fieldElem.isJsonObject()) return null;
         JsonObject obj = fieldElem.getAsJsonObject();
         
-        FieldType type = FieldType.getEnum(obj.get("type").getAsString());
-        JsonElement element = obj.get("value");
+        JsonElement typeElem = obj.get("type");
+        String type = typeElem == null ? null : typeElem.getAsString();
+
+        return readField(fieldName, type, obj.get("value"));
+    }
+
+    /**
+     * Converts the type and the value of a field to the field object.
+     * @param fieldName
+     *            the field name
+     * @param typeName
+     *            the field type
+     * @param element
+     *            a json element represents the field value
+     * @return the field object created, or null if the type is unknown
+     * @throws IOException
+     */
+    Field readField(String fieldName, String typeName, JsonElement element) throws IOException {
+
+        if (typeName == null) return null;
+        FieldType type = FieldType.getEnum(typeName);
 
-        Object object = null;
-        String strVal = null;
         if (type == null || element == null)
             return null;
 
+        return new Field(fieldName, type, readLazyValue(type, element));
+    }
+
+    /**
+     * Converts the value of a field, or defers the conversion until it is
+     * read if the fields are lazy and the value is not a plain string.
+     * @param type
+     *            the field type
+     * @param element
+     *            a json element represents the field value
+     * @return the value object, or the deferred value
+     * @throws IOException
+     */
+    Object readLazyValue(FieldType type, JsonElement element) throws IOException {
+        if (isLazyValue(type) && !element.isJsonNull()) {
+            return new LazyValue(this, type, element.toString());
+        }
+        return readValue(type, element);
+    }
+
+    /**
+     * Returns true if the conversion of the value of the field type is
+     * deferred.
+     * @param type
+     *            the field type
+     * @return true if the value is converted when it is read
+     */
+    boolean isLazyValue(FieldType type) {
+        return lazyFields && !isStringValue(type)
+                && type != FieldType.__ID__ && type != FieldType.__REVISION__;
+    }
+
+    /**
+     * Converts the value of a field to the object held by the field object.
+     * @param type
+     *            the field type
+     * @param element
+     *            a json element represents the field value
+     * @return the value object, or null if the value is null
+     * @throws IOException
+     */
+    Object readValue(FieldType type, JsonElement element) throws IOException {
+
+        Object object = null;
+        String strVal = null;
+
         if (!element.isJsonNull()) {
             switch (type) {
             case SINGLE_LINE_TEXT:
@@ -206,8 +372,7 @@ public class JsonParser {
             case CREATOR:
             case MODIFIER:
                 if (element.isJsonObject()) {
-                    Gson gson = new Gson();
-                    object = gson.fromJson(element, UserDto.class);
+                    object = JsonAdapters.GSON.fromJson(element, UserDto.class);
                 }
                 break;
             case USER_SELECT:
@@ -221,9 +386,38 @@ public class JsonParser {
                 break;
             }
         }
-        field = new Field(fieldName, type, object);
 
-        return field;
+        return object;
+    }
+
+    /**
+     * Returns true if the value of the field type is held as a string.
+     * 
+     * @param type
+     *            field type
+     * @return true if the value is a string
+     */
+    static boolean isStringValue(FieldType type) {
+        switch (type) {
+        case SINGLE_LINE_TEXT:
+        case CALC:
+        case MULTI_LINE_TEXT:
+        case RICH_TEXT:
+        case RADIO_BUTTON:
+        case DROP_DOWN:
+        case LINK:
+        case STATUS:
+        case RECORD_NUMBER:
+        case NUMBER:
+        case DATE:
+        case TIME:
+        case DATETIME:
+        case CREATED_TIME:
+        case UPDATED_TIME:
+            return true;
+        default:
+            return false;
+        }
     }
 
     /**
@@ -266,11 +460,7 @@ public class JsonParser {
     private List<String> jsonToStringArray(JsonElement element) {
         if (!element.isJsonArray())
             return null;
-        Type collectionType = new TypeToken<Collection<String>>() {
-        }.getType();
-        Gson gson = new Gson();
-
-        return gson.fromJson(element, collectionType);
+        return JsonAdapters.GSON.fromJson(element, JsonAdapters.STRING_COLLECTION);
     }
 
     /**
@@ -282,11 +472,7 @@ public class JsonParser {
     private List<UserDto> jsonToUserArray(JsonElement element) {
         if (!element.isJsonArray())
             return null;
-        Type collectionType = new TypeToken<Collection<UserDto>>() {
-        }.getType();
-        Gson gson = new Gson();
-
-        return gson.fromJson(element, collectionType);
+        return JsonAdapters.GSON.fromJson(element, JsonAdapters.USER_COLLECTION);
     }
 
     /**
@@ -298,11 +484,7 @@ public class JsonParser {
     private List<FileDto> jsonToFileArray(JsonElement element) {
         if (!element.isJsonArray())
             return null;
-        Type collectionType = new TypeToken<Collection<FileDto>>() {
-        }.getType();
-        Gson gson = new Gson();
-
-        return gson.fromJson(element, collectionType);
+        return JsonAdapters.GSON.fromJson(element, JsonAdapters.FILE_COLLECTION);
     }
 
     /**
@@ -441,7 +623,23 @@ public class JsonParser {
     public String recordsToJsonForInsert(long app, List<Record> records)
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        recordsToJsonForInsert(baos, app, records);
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Writes the json string for insert method to the stream in UTF-8.
+     * @param os
+     *            the output stream, which is left open
+     * @param app
+     *            the application id
+     * @param records
+     *            the array of the record object
+     * @throws IOException
+     */
+    public void recordsToJsonForInsert(OutputStream os, long app, List<Record> records)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -465,8 +663,7 @@ public class JsonParser {
 
         writer.endObject();
 
-        writer.close();
-        return new String(baos.toByteArray());
+        writer.flush();
     }
 
     /**
@@ -476,9 +673,7 @@ public class JsonParser {
      * @return the array of the long value
      */
     public List<Long> jsonToLongArray(String json) {
-        Gson gson = new Gson();
-        Type listType = new TypeToken<ArrayList<Long>>() {}.getType();
-        return gson.fromJson(json, listType);
+        return JsonAdapters.GSON.fromJson(json, JsonAdapters.LONG_LIST);
     }
 
     /**
@@ -504,6 +699,55 @@ public class JsonParser {
         return ids;
     }
 
+    /**
+     * Retrieves the results from the json string of a bulk request.
+     * @param json
+     *            a json string
+     * @return the array of the results, one for each request
+     * @throws IOException
+     */
+    public List<BulkResult> jsonToBulkResults(String json) throws IOException {
+        com.google.gson.JsonParser parser = new com.google.gson.JsonParser();
+        JsonElement root = parser.parse(json);
+
+        List<BulkResult> results = new ArrayList<BulkResult>();
+        if (root.isJsonObject()) {
+            JsonArray jsonResults = root.getAsJsonObject().get("results").getAsJsonArray();
+            for (JsonElement elem : jsonResults) {
+                BulkResult result = new BulkResult();
+                if (elem.isJsonObject()) {
+                    JsonObject obj = elem.getAsJsonObject();
+                    result.setIds(jsonToLongList(obj.get("ids")));
+                    result.setRevisions(jsonToLongList(obj.get("revisions")));
+                    if (obj.has("id") && !obj.get("id").isJsonNull()) {
+                        result.setId(Long.valueOf(obj.get("id").getAsString()));
+                    }
+                    if (obj.has("revision") && !obj.get("revision").isJsonNull()) {
+                        result.setRevision(Long.valueOf(obj.get("revision").getAsString()));
+                    }
+                }
+                results.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Converts json element to the list of the long values.
+     * @param element json element, or null
+     * @return the list of the long values, or an empty list
+     */
+    private List<Long> jsonToLongList(JsonElement element) {
+        List<Long> list = new ArrayList<Long>();
+        if (element != null && element.isJsonArray()) {
+            for (JsonElement elem : element.getAsJsonArray()) {
+                list.add(Long.valueOf(elem.getAsString()));
+            }
+        }
+        return list;
+    }
+
     /**
      * Generates the json string for update method.
      * @param app
@@ -519,7 +763,25 @@ public class JsonParser {
     public String recordsToJsonForUpdate(long app, List<Long> ids, Record record)
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        recordsToJsonForUpdate(baos, app, ids, record);
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Writes the json string for update method to the stream in UTF-8.
+     * @param os
+     *            the output stream, which is left open
+     * @param app
+     *            the application id
+     * @param ids
+     *            the array of the record id to be updated
+     * @param record
+     *            the values of updated records
+     * @throws IOException
+     */
+    public void recordsToJsonForUpdate(OutputStream os, long app, List<Long> ids, Record record)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -549,8 +811,7 @@ public class JsonParser {
 
         writer.endObject();
 
-        writer.close();
-        return new String(baos.toByteArray());
+        writer.flush();
     }
     
     /**
@@ -566,7 +827,23 @@ public class JsonParser {
     public String recordsToJsonForUpdate(long app, Record record)
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        recordsToJsonForUpdate(baos, app, record);
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Writes the json string for update method to the stream in UTF-8.
+     * @param os
+     *            the output stream, which is left open
+     * @param app
+     *            application id
+     * @param record
+     *            updated record
+     * @throws IOException
+     */
+    public void recordsToJsonForUpdate(OutputStream os, long app, Record record)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -588,8 +865,7 @@ public class JsonParser {
         
         writer.endObject();
 
-        writer.close();
-        return new String(baos.toByteArray());
+        writer.flush();
     }
     
     /**
@@ -605,7 +881,23 @@ public class JsonParser {
     public String recordsToJsonForUpdate(long app, List<Record> records)
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        recordsToJsonForUpdate(baos, app, records);
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Writes the json string for update method to the stream in UTF-8.
+     * @param os
+     *            the output stream, which is left open
+     * @param app
+     *            the application id
+     * @param records
+     *            an array of the updated records
+     * @throws IOException
+     */
+    public void recordsToJsonForUpdate(OutputStream os, long app, List<Record> records)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -635,8 +927,7 @@ public class JsonParser {
 
         writer.endObject();
 
-        writer.close();
-        return new String(baos.toByteArray());
+        writer.flush();
     }
     
     /**
@@ -654,7 +945,25 @@ public class JsonParser {
     public String recordsToJsonForUpdateByKey(long app, String key, Record record)
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        recordsToJsonForUpdateByKey(baos, app, key, record);
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Writes the json string for update method to the stream in UTF-8.
+     * @param os
+     *            the output stream, which is left open
+     * @param app
+     *            application id
+     * @param key
+     *            key field name
+     * @param record
+     *            updated record
+     * @throws IOException
+     */
+    public void recordsToJsonForUpdateByKey(OutputStream os, long app, String key, Record record)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -683,8 +992,7 @@ public class JsonParser {
         
         writer.endObject();
 
-        writer.close();
-        return new String(baos.toByteArray());
+        writer.flush();
     }
     
     /**
@@ -702,7 +1010,25 @@ public class JsonParser {
     public String recordsToJsonForUpdateByKey(long app, String key, List<Record> records)
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        recordsToJsonForUpdateByKey(baos, app, key, records);
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Writes the json string for update method to the stream in UTF-8.
+     * @param os
+     *            the output stream, which is left open
+     * @param app
+     *            application id
+     * @param key
+     *            key field name
+     * @param records
+     *            an array of the updated records
+     * @throws IOException
+     */
+    public void recordsToJsonForUpdateByKey(OutputStream os, long app, String key, List<Record> records)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -739,8 +1065,7 @@ public class JsonParser {
 
         writer.endObject();
 
-        writer.close();
-        return new String(baos.toByteArray());
+        writer.flush();
     }
     
     /**
@@ -756,7 +1081,23 @@ public class JsonParser {
     public String recordsToJsonForDelete(long app, List<Record> records)
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        recordsToJsonForDelete(baos, app, records);
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Writes the json string for delete method to the stream in UTF-8.
+     * @param os
+     *            the output stream, which is left open
+     * @param app
+     *            the application id
+     * @param records
+     *            an array of the records to be deleted
+     * @throws IOException
+     */
+    public void recordsToJsonForDelete(OutputStream os, long app, List<Record> records)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(os, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -777,10 +1118,84 @@ public class JsonParser {
 
         writer.endObject();
 
-        writer.close();
-        return new String(baos.toByteArray());
+        writer.flush();
     }
     
+    /**
+     * Generates the json string to create a record cursor.
+     * @param app
+     *            application id
+     * @param columns
+     *            column names, or null for all the fields
+     * @param query
+     *            query string, or null
+     * @param size
+     *            the number of the records per page
+     * @return
+     *        json string
+     * @throws IOException
+     */
+    public String generateForCreateCursor(long app, String[] columns, String query, int size)
+            throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"));
+
+        writer.beginObject();
+        writer.name("app").value(app);
+        if (columns != null) {
+            writer.name("fields");
+            writer.beginArray();
+            for (String column : columns) {
+                writer.value(column);
+            }
+            writer.endArray();
+        }
+        if (query != null) {
+            writer.name("query").value(query);
+        }
+        writer.name("size").value(size);
+        writer.endObject();
+
+        writer.close();
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Generates the json string to delete a record cursor.
+     * @param id
+     *            cursor id
+     * @return
+     *        json string
+     * @throws IOException
+     */
+    public String generateForDeleteCursor(String id) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"));
+
+        writer.beginObject();
+        writer.name("id").value(id);
+        writer.endObject();
+
+        writer.close();
+        return new String(baos.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Retrieves the cursor id and the total count from json string.
+     * @param json
+     *            a json string
+     * @return an array of the cursor id and the total count
+     * @throws IOException
+     */
+    public String[] jsonToCursor(String json) throws IOException {
+        com.google.gson.JsonParser parser = new com.google.gson.JsonParser();
+        JsonElement root = parser.parse(json);
+
+        if (!root.isJsonObject()) return null;
+        JsonObject obj = root.getAsJsonObject();
+        return new String[] { obj.get("id").getAsString(), obj.get("totalCount").getAsString() };
+    }
+
     /**
      * Retrieves the file key string from json string.
      * @param json
@@ -800,6 +1215,149 @@ public class JsonParser {
         return fileKey;
     }
     
+    /**
+     * Retrieves the record from the json string of record.json.
+     * @param json
+     *            a json string
+     * @return the record object
+     * @throws IOException
+     */
+    public Record jsonToRecord(String json) throws IOException {
+        com.google.gson.JsonParser parser = new com.google.gson.JsonParser();
+        JsonElement root = parser.parse(json);
+
+        if (!root.isJsonObject() || !root.getAsJsonObject().has("record")) {
+            throw new IOException("record is missing");
+        }
+        return readRecord(root.getAsJsonObject().get("record"));
+    }
+
+    /**
+     * Generates the json string of a record keeping the field types and all
+     * the values, in the format of the records returned by kintone. It is
+     * read back with {@link #storedJsonToRecord(String)}.
+     * @param record
+     *            the record object
+     * @return the json string
+     * @throws IOException
+     */
+    public String recordToStoredJson(Record record) throws IOException {
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw);
+        writeStoredRecord(writer, record, true);
+        writer.close();
+        return sw.toString();
+    }
+
+    /**
+     * Reads the record from the json string generated by
+     * {@link #recordToStoredJson(Record)}.
+     * @param json
+     *            a json string
+     * @return the record object
+     * @throws IOException
+     */
+    public Record storedJsonToRecord(String json) throws IOException {
+        com.google.gson.JsonParser parser = new com.google.gson.JsonParser();
+        return readRecord(parser.parse(json));
+    }
+
+    /**
+     * Writes the record with the field types.
+     * @param writer json writer
+     * @param record record object
+     * @param withId true to write the id and the revision
+     * @throws IOException
+     */
+    private void writeStoredRecord(JsonWriter writer, Record record, boolean withId)
+            throws IOException {
+        writer.beginObject();
+        if (withId) {
+            if (record.getId() != null && record.getId() >= 0) {
+                writer.name("$id").beginObject();
+                writer.name("type").value(FieldType.__ID__.toString());
+                writer.name("value").value(String.valueOf(record.getId()));
+                writer.endObject();
+            }
+            if (record.getRevision() != null && record.getRevision() >= 0) {
+                writer.name("$revision").beginObject();
+                writer.name("type").value(FieldType.__REVISION__.toString());
+                writer.name("value").value(String.valueOf(record.getRevision()));
+                writer.endObject();
+            }
+        }
+        for (Map.Entry<String, Field> entry : record.getEntrySet()) {
+            Field field = entry.getValue();
+            writer.name(entry.getKey()).beginObject();
+            writer.name("type").value(field.getFieldType().toString());
+            writer.name("value");
+            writeStoredValue(writer, field);
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Writes the field value with all the properties of the objects.
+     * @param writer json writer
+     * @param field field object
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private void writeStoredValue(JsonWriter writer, Field field) throws IOException {
+        Object value = field.getValue();
+        if (value == null) {
+            writer.nullValue();
+            return;
+        }
+        Gson gson = JsonAdapters.GSON;
+        switch (field.getFieldType()) {
+        case CHECK_BOX:
+        case MULTI_SELECT:
+        case CATEGORY:
+            writer.beginArray();
+            for (String strVal : (List<String>) value) {
+                writer.value(strVal);
+            }
+            writer.endArray();
+            break;
+        case FILE:
+            writer.beginArray();
+            for (FileDto file : (List<FileDto>) value) {
+                gson.toJson(file, FileDto.class, writer);
+            }
+            writer.endArray();
+            break;
+        case USER_SELECT:
+        case ORGANIZATION_SELECT:
+        case GROUP_SELECT:
+        case STATUS_ASSIGNEE:
+            writer.beginArray();
+            for (UserDto user : (List<UserDto>) value) {
+                gson.toJson(user, UserDto.class, writer);
+            }
+            writer.endArray();
+            break;
+        case CREATOR:
+        case MODIFIER:
+            gson.toJson(value, UserDto.class, writer);
+            break;
+        case SUBTABLE:
+            writer.beginArray();
+            for (Record row : (List<Record>) value) {
+                writer.beginObject();
+                writer.name("id").value(String.valueOf(row.getId()));
+                writer.name("value");
+                writeStoredRecord(writer, row, false);
+                writer.endObject();
+            }
+            writer.endArray();
+            break;
+        default:
+            writer.value(value.toString());
+        }
+    }
+
     /**
      * Retrieves the revision string from json string.
      * @param json
@@ -848,11 +1406,7 @@ public class JsonParser {
     public AppDto jsonToApp(String json) throws IOException {
     	com.google.gson.JsonParser parser = new com.google.gson.JsonParser();
         JsonElement element = parser.parse(json);
-        Type elementType = new TypeToken<AppDto>() {
-        }.getType();
-        Gson gson = new Gson();
-
-        return gson.fromJson(element, elementType);
+        return JsonAdapters.GSON.fromJson(element, AppDto.class);
     }
     
     /**
@@ -874,11 +1428,7 @@ public class JsonParser {
         if (!apps.isJsonArray())
             return null;
         
-        Type collectionType = new TypeToken<Collection<AppDto>>() {
-        }.getType();
-        Gson gson = new Gson();
-
-        return gson.fromJson(apps, collectionType);
+        return JsonAdapters.GSON.fromJson(apps, JsonAdapters.APP_COLLECTION);
     }
     
     /**
@@ -896,7 +1446,7 @@ public class JsonParser {
     public String generateForUpdateAssignees(long app, long id, List<String> codes, long revision)
     throws IOException {
     	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -916,7 +1466,7 @@ public class JsonParser {
         writer.endObject();
 
         writer.close();
-        return new String(baos.toByteArray());
+        return new String(baos.toByteArray(), "UTF-8");
     }
     
     /**
@@ -938,7 +1488,7 @@ public class JsonParser {
     public String generateForUpdateStatus(long app, long id, String action, String assignee, long revision)
     throws IOException {
     	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -954,7 +1504,7 @@ public class JsonParser {
         writer.endObject();
 
         writer.close();
-        return new String(baos.toByteArray());
+        return new String(baos.toByteArray(), "UTF-8");
     }
     
     /**
@@ -976,7 +1526,7 @@ public class JsonParser {
     public String generateForUpdateStatus(long app, List<Long> ids, List<String> actions, List<String> assignees, List<Long> revisions)
     throws IOException {
     	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -1002,7 +1552,7 @@ public class JsonParser {
         writer.endObject();
 
         writer.close();
-        return new String(baos.toByteArray());
+        return new String(baos.toByteArray(), "UTF-8");
     }
     
     /**
@@ -1020,7 +1570,7 @@ public class JsonParser {
     public String generateForAddComment(long app, long record, String text, List<MentionDto> mentions)
     throws IOException {
     	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -1044,7 +1594,7 @@ public class JsonParser {
         writer.endObject();
 
         writer.close();
-        return new String(baos.toByteArray());
+        return new String(baos.toByteArray(), "UTF-8");
     }
     
     /**
@@ -1062,7 +1612,7 @@ public class JsonParser {
     public String generateForDeleteComment(long app, long record, long id)
     throws IOException {
     	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos));
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"));
 
         writer.beginObject();
         writer.name("app").value(app);
@@ -1071,7 +1621,7 @@ public class JsonParser {
         writer.endObject();
 
         writer.close();
-        return new String(baos.toByteArray());
+        return new String(baos.toByteArray(), "UTF-8");
     }
     
     /**
@@ -1104,7 +1654,7 @@ public class JsonParser {
         return cs;
     }
     
-    private Date getDateTime(String strDate) {
+    static Date getDateTime(String strDate) {
         if (strDate == null || strDate.isEmpty())
             return null;
         try {
@@ -1129,28 +1679,9 @@ public class JsonParser {
      */
     private Comment readComment(JsonElement elem) throws IOException {
 
-        Comment comment = null;
-        Gson gson = new Gson();
-
-        if (elem.isJsonObject()) {
-            JsonObject obj = elem.getAsJsonObject();
-            long id = obj.get("id").getAsLong();
-            String text = obj.get("text").getAsString();
-            Date createdAt = getDateTime(obj.get("createdAt").getAsString());
-            
-            Type userElementType = new TypeToken<UserDto>() {
-            }.getType();
-            
-            UserDto user = gson.fromJson(obj.getAsJsonObject("creator"), userElementType);
-                       
-            Type mentionsElementType = new TypeToken<Collection<MentionDto>>() {
-            }.getType();
-            
-            List<MentionDto> mentions = gson.fromJson(obj.getAsJsonArray("mentions"), mentionsElementType);
-            
-            comment = new Comment(id, text, createdAt, user, mentions);
+        if (!elem.isJsonObject()) {
+            return null;
         }
-
-        return comment;
+        return JsonAdapters.GSON.fromJson(elem, Comment.class);
     }
 } 
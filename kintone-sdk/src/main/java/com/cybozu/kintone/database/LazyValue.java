@@ -0,0 +1,50 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+
+/**
+ * A field value kept as the json string until it is read, so the lists, the
+ * users and the sub tables of the fields never read cost no conversion. The
+ * string is much smaller than the element tree or the decoded objects, but
+ * the first read parses it again.
+ *
+ */
+final class LazyValue {
+    private final JsonParser parser;
+    private final FieldType type;
+    private final String json;
+
+    LazyValue(JsonParser parser, FieldType type, String json) {
+        this.parser = parser;
+        this.type = type;
+        this.json = json;
+    }
+
+    /**
+     * Converts the json string to the value.
+     *
+     * @return the field value
+     */
+    Object decode() {
+        try {
+            return parser.readValue(type, new com.google.gson.JsonParser().parse(json));
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent local copy of the records of the applications, kept up to date
+ * by {@link RecordMirror}. The records are stored with their field types, so
+ * they read back as they were selected.
+ *
+ */
+public interface LocalRecordStore extends Closeable {
+
+    /**
+     * Stores the records, replacing the ones with the same ids. Either all
+     * the records are stored or none of them are.
+     * 
+     * @param app
+     *            application id
+     * @param records
+     *            the records with their ids and revisions
+     * @throws DBException
+     */
+    public void putRecords(long app, List<Record> records) throws DBException;
+
+    /**
+     * Deletes the records.
+     * 
+     * @param app
+     *            application id
+     * @param ids
+     *            the ids of the records
+     * @throws DBException
+     */
+    public void deleteRecords(long app, Collection<Long> ids) throws DBException;
+
+    /**
+     * Gets a record.
+     * 
+     * @param app
+     *            application id
+     * @param id
+     *            record id
+     * @return the record, or null if not stored
+     * @throws DBException
+     */
+    public Record getRecord(long app, long id) throws DBException;
+
+    /**
+     * Selects the records in the order of the ids.
+     * 
+     * @param app
+     *            application id
+     * @param filter
+     *            the filter of the records, or null to select all
+     * @return the list of the records
+     * @throws DBException
+     */
+    public List<Record> selectRecords(long app, RecordFilter filter) throws DBException;
+
+    /**
+     * Gets the revisions of all the stored records.
+     * 
+     * @param app
+     *            application id
+     * @return the map from the record id to the revision
+     * @throws DBException
+     */
+    public Map<Long, Long> getRevisions(long app) throws DBException;
+
+    /**
+     * Gets the state of the synchronization.
+     * 
+     * @param app
+     *            application id
+     * @return the state string, or null if never synchronized
+     * @throws DBException
+     */
+    public String getSyncState(long app) throws DBException;
+
+    /**
+     * Sets the state of the synchronization.
+     * 
+     * @param app
+     *            application id
+     * @param state
+     *            the state string without line breaks
+     * @throws DBException
+     */
+    public void setSyncState(long app, String state) throws DBException;
+
+    /**
+     * Deletes all the records and the state of the application.
+     * 
+     * @param app
+     *            application id
+     * @throws DBException
+     */
+    public void clear(long app) throws DBException;
+}
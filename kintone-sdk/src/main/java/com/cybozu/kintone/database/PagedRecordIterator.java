@@ -0,0 +1,213 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+import com.cybozu.kintone.database.exception.DBIterationException;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A base class of the iterators which read the records page by page. While the
+ * caller processes a page, the next page is fetched in the background.
+ * 
+ * The iterator can be used only once. The failures of the requests are thrown
+ * as {@link DBIterationException}.
+ *
+ */
+public abstract class PagedRecordIterator implements Iterator<Record>, Iterable<Record>, Closeable {
+
+    private final Executor executor;
+    private Iterator<Record> current = null;
+    private FutureTask<List<Record>> pending = null;
+    private boolean morePages = true;
+    private boolean closed = false;
+    private long pageCount = 0;
+    private long recordCount = 0;
+
+    /**
+     * Constructor
+     * 
+     * @param executor
+     *            the executor which prefetches the pages, or null to fetch
+     *            them on the caller thread
+     */
+    protected PagedRecordIterator(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Fetches the next page.
+     * 
+     * @return the records of the page
+     * @throws DBException
+     */
+    protected abstract List<Record> fetchPage() throws DBException;
+
+    /**
+     * Returns true if another page can be fetched. Called after each
+     * {@link #fetchPage()}.
+     * 
+     * @return true if another page exists
+     */
+    protected abstract boolean hasMorePages();
+
+    /**
+     * Releases the resources on the server. Called once by {@link #close()}.
+     * 
+     * @throws DBException
+     */
+    protected void onClose() throws DBException {
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            if (!loadNextPage()) {
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Record next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Takes the next page and starts fetching the one after it.
+     * 
+     * @return false if there are no more pages
+     */
+    private boolean loadNextPage() {
+        if (closed) return false;
+
+        List<Record> page;
+        if (pending != null) {
+            page = await(pending);
+            pending = null;
+        } else if (morePages) {
+            try {
+                page = fetchPage();
+            } catch (DBException e) {
+                throw new DBIterationException(e);
+            }
+        } else {
+            return false;
+        }
+
+        pageCount++;
+        recordCount += page.size();
+        morePages = hasMorePages();
+        if (morePages && executor != null) {
+            pending = new FutureTask<List<Record>>(new Callable<List<Record>>() {
+                @Override
+                public List<Record> call() throws Exception {
+                    return fetchPage();
+                }
+            });
+            executor.execute(pending);
+        }
+        current = page.iterator();
+        return true;
+    }
+
+    /**
+     * Waits for the prefetched page.
+     * 
+     * @param task
+     *            the prefetching task
+     * @return the records of the page
+     */
+    private List<Record> await(FutureTask<List<Record>> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBIterationException(new DBException(e, "interrupted while fetching records"));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DBException) {
+                throw new DBIterationException((DBException) cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new DBIterationException(new DBException(cause));
+        }
+    }
+
+    /**
+     * @return the number of the pages fetched so far
+     */
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return the number of the records fetched so far
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Stops the iteration and releases the resources. Waits for the page being
+     * prefetched, if any.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        current = null;
+        if (pending != null) {
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // the iteration is abandoned, so the failure is not reported
+            }
+            pending = null;
+        }
+        try {
+            onClose();
+        } catch (DBException e) {
+            throw new DBIterationException(e);
+        }
+    }
+}
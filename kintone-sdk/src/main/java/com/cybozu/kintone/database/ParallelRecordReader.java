@@ -0,0 +1,237 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+import com.cybozu.kintone.database.exception.DBIterationException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An iterator which reads the records of a large app in parallel. The $id
+ * space is split into ranges, each range is read with the seek paging by one
+ * of the bounded workers, and the pages are merged into a single stream.
+ * 
+ * In the ordered mode the records are returned in the order of $id; otherwise
+ * they are returned as soon as any range delivers them. Close the reader when
+ * the iteration is stopped before the end.
+ *
+ */
+public class ParallelRecordReader implements Iterator<Record>, Iterable<Record>, Closeable {
+    private static final int QUEUE_PAGES = 2;
+    private static final Object END = new Object();
+
+    private final int rangeCount;
+    private final boolean ordered;
+    private final ExecutorService workers;
+    private final List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+    private final AtomicLong byteCount = new AtomicLong();
+    private Iterator<Record> current = null;
+    private int finishedRanges = 0;
+    private boolean closed = false;
+
+    /**
+     * A failure of a worker passed to the reader.
+     */
+    private static class Failure {
+        private final DBException exception;
+
+        private Failure(DBException exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param connection
+     *            the connection object
+     * @param app
+     *            application id
+     * @param query
+     *            the condition of the query, or null
+     * @param columns
+     *            column names if needed
+     * @param bounds
+     *            the range bounds; range i covers the ids greater than
+     *            bounds[i] and less than or equal to bounds[i + 1]
+     * @param concurrency
+     *            the maximum number of the concurrent requests
+     * @param ordered
+     *            true to return the records in the order of $id
+     */
+    ParallelRecordReader(Connection connection, long app, String query, String[] columns,
+            long[] bounds, int concurrency, boolean ordered) {
+        this.rangeCount = bounds.length - 1;
+        this.ordered = ordered;
+
+        int queueCount = ordered ? rangeCount : 1;
+        for (int i = 0; i < queueCount; i++) {
+            int capacity = ordered ? QUEUE_PAGES : QUEUE_PAGES * concurrency;
+            queues.add(new LinkedBlockingQueue<Object>(capacity));
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, rangeCount)), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "kintone-sdk-reader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (int i = 0; i < rangeCount; i++) {
+            SeekRecordIterator range = new SeekRecordIterator(connection, app, query, columns,
+                    bounds[i], bounds[i + 1], null);
+            workers.execute(new RangeWorker(range, queues.get(ordered ? i : 0)));
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Reads a range and puts its pages to the queue.
+     */
+    private class RangeWorker implements Runnable {
+        private final SeekRecordIterator range;
+        private final BlockingQueue<Object> queue;
+
+        private RangeWorker(SeekRecordIterator range, BlockingQueue<Object> queue) {
+            this.range = range;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    List<Record> page = new ArrayList<Record>();
+                    while (range.hasNext()) {
+                        page.add(range.next());
+                        if (page.size() >= SeekRecordIterator.PAGE_SIZE) {
+                            queue.put(page);
+                            page = new ArrayList<Record>();
+                        }
+                    }
+                    if (!page.isEmpty()) {
+                        queue.put(page);
+                    }
+                    queue.put(END);
+                } catch (DBIterationException e) {
+                    queue.put(new Failure(e.getCause()));
+                } catch (RuntimeException e) {
+                    queue.put(new Failure(new DBException(e)));
+                } finally {
+                    byteCount.addAndGet(range.getByteCount());
+                    range.close();
+                }
+            } catch (InterruptedException e) {
+                // the reader was closed
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            if (closed || finishedRanges >= rangeCount) {
+                close();
+                return false;
+            }
+            Object item = take();
+            if (item == END) {
+                finishedRanges++;
+            } else if (item instanceof Failure) {
+                close();
+                throw new DBIterationException(((Failure) item).exception);
+            } else {
+                @SuppressWarnings("unchecked")
+                List<Record> page = (List<Record>) item;
+                current = page.iterator();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes the next item from the queue of the current range.
+     */
+    private Object take() {
+        BlockingQueue<Object> queue = queues.get(ordered ? finishedRanges : 0);
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new DBIterationException(new DBException(e, "interrupted while reading records"));
+        }
+    }
+
+    @Override
+    public Record next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the number of the ranges
+     */
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * @return the number of the response bytes read by the finished ranges
+     */
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * Stops the workers.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        current = null;
+        workers.shutdownNow();
+        for (BlockingQueue<Object> queue : queues) {
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A transport which limits the number of the connections opened to each host.
+ * The platform keeps the sockets of the fully read responses alive, so bounding
+ * the concurrent connections per host keeps them within the keep-alive cache
+ * and lets the following requests reuse the warm TLS sessions. The platform
+ * owns the idle sockets, so their eviction follows the "http.keepAlive" and
+ * "http.maxConnections" system properties; the maximum per host should not
+ * exceed the latter. Set it with {@link Connection#setTransport(HttpTransport)}.
+ *
+ */
+public class PooledHttpTransport implements HttpTransport {
+    public static final int DEFAULT_MAX_PER_HOST = 5;
+
+    private final int maxPerHost;
+    private final Map<String, Semaphore> permits = new HashMap<String, Semaphore>();
+    private final Map<HttpURLConnection, Semaphore> leased = new IdentityHashMap<HttpURLConnection, Semaphore>();
+
+    /**
+     * Constructor
+     */
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_PER_HOST);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param maxPerHost
+     *            the maximum number of the concurrent connections per host
+     */
+    public PooledHttpTransport(int maxPerHost) {
+        if (maxPerHost <= 0) {
+            throw new IllegalArgumentException("maxPerHost must be positive");
+        }
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * Gets the maximum number of the concurrent connections per host.
+     * 
+     * @return the maximum number of the connections
+     */
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    private synchronized Semaphore getPermits(String host) {
+        Semaphore semaphore = permits.get(host);
+        if (semaphore == null) {
+            semaphore = new Semaphore(maxPerHost, true);
+            permits.put(host, semaphore);
+        }
+        return semaphore;
+    }
+
+    @Override
+    public HttpURLConnection open(URL url, Proxy proxy) throws IOException {
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        Semaphore semaphore = getPermits(url.getHost() + ":" + port);
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a connection");
+        }
+
+        HttpURLConnection conn;
+        try {
+            if (proxy == null) {
+                conn = (HttpURLConnection) url.openConnection();
+            } else {
+                conn = (HttpURLConnection) url.openConnection(proxy);
+            }
+        } catch (IOException e) {
+            semaphore.release();
+            throw e;
+        }
+        synchronized (this) {
+            leased.put(conn, semaphore);
+        }
+        return conn;
+    }
+
+    @Override
+    public void release(HttpURLConnection conn, boolean reusable) {
+        if (!reusable) {
+            conn.disconnect();
+        }
+        Semaphore semaphore;
+        synchronized (this) {
+            semaphore = leased.remove(conn);
+        }
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        // the connections in use are released by the threads using them
+    }
+}
@@ -0,0 +1,31 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+/**
+ * Receives the progress of a file transfer.
+ *
+ */
+public interface ProgressListener {
+
+    /**
+     * Called each time a block of the file is transferred.
+     * 
+     * @param transferred
+     *            the number of the bytes transferred so far
+     * @param total
+     *            the size of the file, or -1 if unknown
+     */
+    public void onProgress(long transferred, long total);
+}
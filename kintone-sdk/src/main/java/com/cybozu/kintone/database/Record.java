@@ -101,6 +101,17 @@ public class Record implements Cloneable {
         return fields.get(name);
     }
 
+    /**
+     * Gets the value of the field.
+     * 
+     * @param name
+     *            field name
+     * @return the field value
+     */
+    Object getFieldValue(String name) {
+        return fields.get(name).getValue();
+    }
+
     /**
      * Adds a new field.
      * 
@@ -182,7 +193,7 @@ public class Record implements Cloneable {
      * @return true if the field value is empty
      */
     public boolean isEmpty(String name) {
-        return fields.get(name).isEmpty();
+        return getFieldValue(name) == null;
     }
 
     /**
@@ -205,7 +216,7 @@ public class Record implements Cloneable {
      */
     public Long getLong(String name) {
 
-        return fields.get(name).getAsLong();
+        return Field.asLong(getFieldValue(name));
     }
 
     /**
@@ -217,7 +228,7 @@ public class Record implements Cloneable {
      */
     public String getString(String name) {
 
-        return fields.get(name).getAsString();
+        return Field.asString(getFieldValue(name));
     }
 
     /**
@@ -226,8 +237,9 @@ public class Record implements Cloneable {
      * @param name
      *            field name
      */
+    @SuppressWarnings("unchecked")
     public List<String> getStrings(String name) {
-        return fields.get(name).getAsStringList();
+        return (List<String>) Field.asList(getFieldValue(name));
     }
 
     /**
@@ -236,9 +248,10 @@ public class Record implements Cloneable {
      * @param name
      *            field name
      */
+    @SuppressWarnings("unchecked")
     public List<FileDto> getFiles(String name) {
 
-        return fields.get(name).getAsFileList();
+        return (List<FileDto>) Field.asList(getFieldValue(name));
     }
 
     /**
@@ -249,7 +262,7 @@ public class Record implements Cloneable {
      */
 
     public UserDto getUser(String name) {
-        return fields.get(name).getAsUserInfo();
+        return Field.asUserInfo(getFieldValue(name));
     }
 
     /**
@@ -258,8 +271,9 @@ public class Record implements Cloneable {
      * @param name
      *            field name
      */
+    @SuppressWarnings("unchecked")
     public List<UserDto> getUsers(String name) {
-        return fields.get(name).getAsUserList();
+        return (List<UserDto>) Field.asList(getFieldValue(name));
     }
 
     /**
@@ -269,7 +283,27 @@ public class Record implements Cloneable {
      *            field name
      */
     public Date getDateTime(String name) {
-        String strDate = fields.get(name).getAsString();
+        return parseDateTime(Field.asString(getFieldValue(name)));
+    }
+
+    /**
+     * Gets the field value as a date object.
+     * 
+     * @param name
+     *            field name
+     */
+    public Date getDate(String name) {
+        return parseDate(Field.asString(getFieldValue(name)));
+    }
+
+    /**
+     * Parses a date time value of kintone.
+     * 
+     * @param strDate
+     *            the value string
+     * @return the date object, or null if empty
+     */
+    static Date parseDateTime(String strDate) {
         if (strDate == null || strDate.isEmpty())
             return null;
         try {
@@ -282,13 +316,13 @@ public class Record implements Cloneable {
     }
 
     /**
-     * Gets the field value as a date object.
+     * Parses a date value of kintone.
      * 
-     * @param name
-     *            field name
+     * @param strDate
+     *            the value string
+     * @return the date object, or null if empty
      */
-    public Date getDate(String name) {
-        String strDate = fields.get(name).getAsString();
+    static Date parseDate(String strDate) {
         if (strDate == null || strDate.isEmpty())
             return null;
         try {
@@ -306,8 +340,9 @@ public class Record implements Cloneable {
      * @param name
      *            field name
      */
+    @SuppressWarnings("unchecked")
     public List<Record> getSubtable(String name) {
-        return fields.get(name).getAsSubtable();
+        return (List<Record>) Field.asList(getFieldValue(name));
     }
 
     /**
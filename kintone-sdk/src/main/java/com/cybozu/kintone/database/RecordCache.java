@@ -0,0 +1,343 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory cache of the records keyed by the application id and the
+ * record id, bounded by the number of the records and their estimated size.
+ * The least recently used records are evicted first.
+ *
+ * The cache is filled by {@link Connection#selectById(long, long)}. The
+ * updates and the deletes drop the records, since kintone recomputes the
+ * calculated fields and the updated time of an updated record, which the
+ * response does not return. The records are copied in and out together with
+ * their field values, including the rows of the subtables and the lists of
+ * the users and the files, so changing a record got from the cache does not
+ * change the cached one.
+ *
+ */
+public class RecordCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024L;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries =
+            new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    private long bytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * The key of a record.
+     */
+    private static class Key {
+        private final long app;
+        private final long id;
+
+        private Key(long app, long id) {
+            this.app = app;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return app == other.app && id == other.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (app ^ (app >>> 32)) * 31 + (int) (id ^ (id >>> 32));
+        }
+    }
+
+    /**
+     * A cached record.
+     */
+    private static class Entry {
+        private final Record record;
+        private final long bytes;
+
+        private Entry(Record record, long bytes) {
+            this.record = record;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Constructor
+     */
+    public RecordCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries
+     *            the maximum number of the records
+     * @param maxBytes
+     *            the maximum total of the estimated size of the records
+     */
+    public RecordCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a copy of the cached record.
+     *
+     * @param app
+     *            application id
+     * @param id
+     *            record id
+     * @return the record, or null if not cached
+     */
+    public synchronized Record get(long app, long id) {
+        Entry entry = entries.get(new Key(app, id));
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return copy(entry.record);
+    }
+
+    /**
+     * Stores a copy of the record.
+     *
+     * @param app
+     *            application id
+     * @param record
+     *            the record with its id and revision
+     * @param bytes
+     *            the estimated size of the record, such as the length of its
+     *            json string
+     */
+    public synchronized void put(long app, Record record, long bytes) {
+        Entry old = entries.put(new Key(app, record.getId()),
+                new Entry(copy(record), bytes));
+        if (old != null) {
+            this.bytes -= old.bytes;
+        }
+        this.bytes += bytes;
+        trim();
+    }
+
+    /**
+     * Finds the id of the cached record by the value of the key field.
+     *
+     * @param app
+     *            application id
+     * @param fieldName
+     *            the key field
+     * @param value
+     *            the value of the key field
+     * @return the record id, or null if not cached
+     */
+    synchronized Long findId(long app, String fieldName, Object value) {
+        if (value == null) {
+            return null;
+        }
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (entry.getKey().app != app) continue;
+            Field field = entry.getValue().record.getField(fieldName);
+            if (field != null && value.equals(field.getValue())) {
+                return entry.getKey().id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the record.
+     *
+     * @param app
+     *            application id
+     * @param id
+     *            record id
+     */
+    public synchronized void invalidate(long app, long id) {
+        remove(new Key(app, id));
+    }
+
+    /**
+     * Drops all the records of the application.
+     *
+     * @param app
+     *            application id
+     */
+    public synchronized void invalidateApp(long app) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().app == app) {
+                bytes -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the records.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return the number of the cached records
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total of the estimated size of the cached records
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of the lookups served from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of the lookups not found in the cache
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of the records evicted to keep the bounds
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Copies the record with its own field objects and values, so that the
+     * cached record and the ones of the callers do not change each other. An
+     * indexed record is copied in the indexed layout.
+     *
+     * @param record
+     *            the record
+     * @return the copy
+     */
+    private static Record copy(Record record) {
+        if (record instanceof IndexedRecord && ((IndexedRecord) record).getSchema() != null) {
+            IndexedRecord indexed = (IndexedRecord) record;
+            RecordSchema schema = indexed.getSchema();
+            Object[] values = new Object[schema.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = copyValue(indexed.getValue(i));
+            }
+            return new IndexedRecord(schema, values, record.getId(), record.getRevision());
+        }
+        Record copy = new Record(record.getId(), record.getRevision());
+        for (Map.Entry<String, Field> entry : record.getEntrySet()) {
+            Field field = entry.getValue();
+            copy.addField(entry.getKey(), new Field(entry.getKey(), field.getFieldType(),
+                    copyValue(field.getValue())));
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the field value. The lists, the subtable rows and the users and
+     * the files are copied, and the other values are immutable.
+     *
+     * @param value
+     *            the field value
+     * @return the copy
+     */
+    private static Object copyValue(Object value) {
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object item : (List<?>) value) {
+                list.add(copyValue(item));
+            }
+            return list;
+        }
+        if (value instanceof Record) {
+            return copy((Record) value);
+        }
+        if (value instanceof UserDto) {
+            UserDto user = (UserDto) value;
+            UserDto copy = new UserDto();
+            copy.setCode(user.getCode());
+            copy.setName(user.getName());
+            return copy;
+        }
+        if (value instanceof FileDto) {
+            FileDto file = (FileDto) value;
+            FileDto copy = new FileDto();
+            copy.setContentType(file.getContentType());
+            copy.setUrl(file.getUrl());
+            copy.setFileKey(file.getFileKey());
+            copy.setName(file.getName());
+            copy.setSize(file.getSize());
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Removes the record.
+     *
+     * @param key
+     *            the key of the record
+     */
+    private void remove(Key key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+    }
+
+    /**
+     * Evicts the least recently used records until the bounds are kept.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<Key, Entry> eldest = it.next();
+            bytes -= eldest.getValue().bytes;
+            it.remove();
+            evictionCount++;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+/**
+ * A change of a record found by {@link Connection#sync(long, SyncListener)}.
+ *
+ */
+public class RecordChange {
+
+    /**
+     * The kinds of the changes.
+     */
+    public enum Type {
+        ADDED, UPDATED, DELETED
+    }
+
+    private final Type type;
+    private final long id;
+    private final Record record;
+
+    /**
+     * Constructor
+     *
+     * @param type
+     *            the kind of the change
+     * @param id
+     *            record id
+     * @param record
+     *            the current record, or null if deleted
+     */
+    public RecordChange(Type type, long id, Record record) {
+        this.type = type;
+        this.id = id;
+        this.record = record;
+    }
+
+    /**
+     * @return the kind of the change
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return record id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the current record, or null if deleted
+     */
+    public Record getRecord() {
+        return record;
+    }
+}
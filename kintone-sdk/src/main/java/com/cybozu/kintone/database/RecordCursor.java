@@ -0,0 +1,91 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An iterator over the records of a kintone record cursor
+ * (records/cursor.json). Unlike the offset paging, the cost of each page does
+ * not grow with the position and the 10,000 offset limit does not apply.
+ * 
+ * Close the cursor when the iteration is stopped before the end, so that the
+ * cursor is deleted on the server.
+ *
+ */
+public class RecordCursor extends PagedRecordIterator {
+
+    private final Connection connection;
+    private final String id;
+    private final long totalCount;
+    private volatile boolean more = true;
+
+    /**
+     * Constructor
+     * 
+     * @param connection
+     *            the connection which created the cursor
+     * @param id
+     *            cursor id
+     * @param totalCount
+     *            the number of the records of the cursor
+     * @param executor
+     *            the executor which prefetches the pages, or null
+     */
+    RecordCursor(Connection connection, String id, long totalCount, Executor executor) {
+        super(executor);
+        this.connection = connection;
+        this.id = id;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * @return cursor id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the number of the records of the cursor
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    protected List<Record> fetchPage() throws DBException {
+        RecordPage page = connection.fetchCursor(id);
+        more = page.hasMore();
+        return page.getRecords();
+    }
+
+    @Override
+    protected boolean hasMorePages() {
+        return more;
+    }
+
+    @Override
+    protected void onClose() throws DBException {
+        // kintone deletes the cursor by itself after the last page
+        if (more) {
+            more = false;
+            connection.deleteCursor(id);
+        }
+    }
+}
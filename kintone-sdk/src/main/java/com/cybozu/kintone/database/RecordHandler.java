@@ -0,0 +1,34 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+/**
+ * An interface which receives the records one by one while the response is
+ * being parsed.
+ *
+ */
+public interface RecordHandler {
+
+    /**
+     * Handles a record.
+     * 
+     * @param record
+     *            the record object parsed
+     * @throws DBException
+     *            to abort the request
+     */
+    public void handle(Record record) throws DBException;
+}
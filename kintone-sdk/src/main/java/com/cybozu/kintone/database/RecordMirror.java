@@ -0,0 +1,125 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mirrors the records of an application into a local record store, so the
+ * screens read them locally and only the changes go over the network.
+ *
+ * Each {@link #sync()} runs {@link Connection#sync(long, SyncState, SyncListener)}
+ * from the watermark and the revisions kept in the store, so the first one
+ * copies all the records and the following ones only the changes.
+ *
+ */
+public class RecordMirror {
+    private final Connection connection;
+    private final LocalRecordStore store;
+    private final long app;
+
+    /**
+     * Constructor
+     *
+     * @param connection
+     *            the connection object
+     * @param store
+     *            the local record store
+     * @param app
+     *            application id
+     */
+    public RecordMirror(Connection connection, LocalRecordStore store, long app) {
+        this.connection = connection;
+        this.store = store;
+        this.app = app;
+    }
+
+    /**
+     * Brings the local records up to date.
+     *
+     * @return the number of the records stored or deleted
+     * @throws DBException
+     */
+    public synchronized int sync() throws DBException {
+        SyncState state = new SyncState(store.getSyncState(app), store.getRevisions(app));
+        try {
+            return connection.sync(app, state, new SyncListener() {
+                @Override
+                public void onChanges(long app, List<RecordChange> changes) throws DBException {
+                    List<Record> records = new ArrayList<Record>();
+                    List<Long> deleted = new ArrayList<Long>();
+                    for (RecordChange change : changes) {
+                        if (change.getType() == RecordChange.Type.DELETED) {
+                            deleted.add(change.getId());
+                        } else {
+                            records.add(change.getRecord());
+                        }
+                    }
+                    if (!records.isEmpty()) {
+                        store.putRecords(app, records);
+                    }
+                    if (!deleted.isEmpty()) {
+                        store.deleteRecords(app, deleted);
+                    }
+                }
+            });
+        } finally {
+            String watermark = state.getWatermark();
+            if (watermark != null) {
+                store.setSyncState(app, watermark);
+            }
+        }
+    }
+
+    /**
+     * Gets a local record.
+     *
+     * @param id
+     *            record id
+     * @return the record, or null if not stored
+     * @throws DBException
+     */
+    public Record getRecord(long id) throws DBException {
+        return store.getRecord(app, id);
+    }
+
+    /**
+     * Selects the local records in the order of the ids.
+     *
+     * @param filter
+     *            the filter of the records, or null to select all
+     * @return the list of the records
+     * @throws DBException
+     */
+    public List<Record> select(RecordFilter filter) throws DBException {
+        return store.selectRecords(app, filter);
+    }
+
+    /**
+     * @return the local record store
+     */
+    public LocalRecordStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return application id
+     */
+    public long getApp() {
+        return app;
+    }
+}
@@ -0,0 +1,45 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import java.util.List;
+
+/**
+ * A page of the records read by the paging iterators.
+ *
+ */
+class RecordPage {
+    private final List<Record> records;
+    private final boolean more;
+
+    RecordPage(List<Record> records, boolean more) {
+        this.records = records;
+        this.more = more;
+    }
+
+    /**
+     * @return the records of the page
+     */
+    List<Record> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return true if the server has more pages
+     */
+    boolean hasMore() {
+        return more;
+    }
+}
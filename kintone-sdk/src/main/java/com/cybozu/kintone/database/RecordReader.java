@@ -0,0 +1,392 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the records of a records.json response one by one from the stream,
+ * without keeping the whole response in memory.
+ *
+ */
+public class RecordReader implements Closeable {
+
+    private final JsonParser parser;
+    private final JsonReader reader;
+    private final com.google.gson.JsonParser elementParser = new com.google.gson.JsonParser();
+    private boolean inRecords = false;
+    private boolean finished = false;
+    private Long totalCount = null;
+    private boolean more = false;
+    private final RecordSchema.Pool schemas = new RecordSchema.Pool();
+    private final List<String> names = new ArrayList<String>();
+    private final List<FieldType> types = new ArrayList<FieldType>();
+    private final List<Object> values = new ArrayList<Object>();
+
+    /**
+     * Constructor
+     * 
+     * @param parser
+     *            the parser which converts the field values
+     * @param is
+     *            the response stream
+     * @throws IOException
+     */
+    RecordReader(JsonParser parser, InputStream is) throws IOException {
+        this.parser = parser;
+        this.reader = new JsonReader(new InputStreamReader(is, "UTF-8"));
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("records")) {
+                reader.beginArray();
+                inRecords = true;
+                return;
+            }
+            readProperty(name);
+        }
+        reader.endObject();
+        finished = true;
+    }
+
+    /**
+     * Reads a property other than the records.
+     * 
+     * @param name
+     *            the property name
+     * @throws IOException
+     */
+    private void readProperty(String name) throws IOException {
+        if (name.equals("totalCount") && reader.peek() != JsonToken.NULL) {
+            totalCount = Long.valueOf(reader.nextString());
+        } else if (name.equals("next") && reader.peek() == JsonToken.BOOLEAN) {
+            more = reader.nextBoolean();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    /**
+     * Returns true if the response has more records.
+     * 
+     * @return true if a record can be read
+     * @throws IOException
+     */
+    public boolean hasNext() throws IOException {
+        if (finished) return false;
+        if (inRecords && reader.hasNext()) return true;
+
+        if (inRecords) {
+            reader.endArray();
+            inRecords = false;
+        }
+        while (reader.hasNext()) {
+            readProperty(reader.nextName());
+        }
+        reader.endObject();
+        finished = true;
+        return false;
+    }
+
+    /**
+     * Reads the next record.
+     * 
+     * @return the record object
+     * @throws IOException
+     */
+    public Record next() throws IOException {
+        if (!hasNext()) {
+            throw new IllegalStateException("no more records");
+        }
+        return readRecord();
+    }
+
+    /**
+     * Reads a record object.
+     * 
+     * @return the record object
+     * @throws IOException
+     */
+    private Record readRecord() throws IOException {
+        if (parser.isIndexedRecords()) {
+            return readIndexedRecord();
+        }
+        Record record = new Record();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String type = null;
+            Object value = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("type") && reader.peek() == JsonToken.STRING) {
+                    type = reader.nextString();
+                } else if (name.equals("value")) {
+                    value = readValue(type);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            Field field;
+            if (value instanceof LazyValue) {
+                field = new Field(fieldName, FieldType.getEnum(type), value);
+            } else {
+                field = parser.readField(fieldName, type, (JsonElement) value);
+            }
+            if (field != null) {
+                record.addField(field.getName(), field);
+            }
+        }
+        reader.endObject();
+
+        return record;
+    }
+
+    /**
+     * Reads a record object into the array layout, sharing the schema with
+     * the records of the same shape.
+     * 
+     * @return the record object
+     * @throws IOException
+     */
+    private Record readIndexedRecord() throws IOException {
+        names.clear();
+        types.clear();
+        values.clear();
+        long id = -1;
+        long revision = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String type = null;
+            Object value = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("type") && reader.peek() == JsonToken.STRING) {
+                    type = reader.nextString();
+                } else if (name.equals("value")) {
+                    value = readValue(type);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            FieldType fieldType = type == null ? null : FieldType.getEnum(type);
+            if (fieldType == null || value == null) continue;
+            Object object = value instanceof LazyValue ? value
+                    : parser.readLazyValue(fieldType, (JsonElement) value);
+            if (fieldType == FieldType.__ID__ || fieldType == FieldType.__REVISION__) {
+                if (object instanceof Long) {
+                    if (fieldType == FieldType.__ID__) {
+                        id = (Long) object;
+                    } else {
+                        revision = (Long) object;
+                    }
+                }
+                continue;
+            }
+            names.add(fieldName);
+            types.add(fieldType);
+            values.add(object);
+        }
+        reader.endObject();
+
+        return new IndexedRecord(schemas.get(names, types), values.toArray(), id, revision);
+    }
+
+    /**
+     * Reads the value of a field. The value of a type whose conversion is
+     * deferred is copied to a json string, without building the element tree.
+     * 
+     * @param typeName
+     *            the type read before the value, or null
+     * @return the json element, or the deferred value
+     * @throws IOException
+     */
+    private Object readValue(String typeName) throws IOException {
+        FieldType type = typeName == null ? null : FieldType.getEnum(typeName);
+        if (type != null && parser.isLazyValue(type) && reader.peek() != JsonToken.NULL) {
+            return new LazyValue(parser, type, readRawValue());
+        }
+        return elementParser.parse(reader);
+    }
+
+    /**
+     * Copies the next value of the stream to a json string.
+     * 
+     * @return the json string
+     * @throws IOException
+     */
+    private String readRawValue() throws IOException {
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw);
+        int depth = 0;
+        do {
+            switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                depth++;
+                break;
+            case END_ARRAY:
+                reader.endArray();
+                writer.endArray();
+                depth--;
+                break;
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                depth++;
+                break;
+            case END_OBJECT:
+                reader.endObject();
+                writer.endObject();
+                depth--;
+                break;
+            case NAME:
+                writer.name(reader.nextName());
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                writer.value(new BigDecimal(reader.nextString()));
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IOException("unexpected end of the json");
+            }
+        } while (depth > 0);
+        writer.close();
+        return sw.toString();
+    }
+
+    /**
+     * Reads the next record into a new row of the columnar result set. The
+     * string values are read as they are, without the field objects.
+     * 
+     * @param rs
+     *            the result set
+     * @throws IOException
+     */
+    void nextInto(ColumnarResultSet rs) throws IOException {
+        if (!hasNext()) {
+            throw new IllegalStateException("no more records");
+        }
+        rs.addRow();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String type = null;
+            String string = null;
+            JsonElement value = null;
+            boolean hasValue = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("type") && reader.peek() == JsonToken.STRING) {
+                    type = reader.nextString();
+                } else if (name.equals("value")) {
+                    hasValue = true;
+                    if (reader.peek() == JsonToken.STRING) {
+                        string = reader.nextString();
+                    } else {
+                        value = elementParser.parse(reader);
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            FieldType fieldType = type == null ? null : FieldType.getEnum(type);
+            if (fieldType == null || !hasValue) continue;
+            if (value == null) {
+                boolean plain = JsonParser.isStringValue(fieldType)
+                        || fieldType == FieldType.__ID__ || fieldType == FieldType.__REVISION__;
+                value = plain ? null : new JsonPrimitive(string);
+            } else if (value.isJsonNull()) {
+                string = null;
+                value = null;
+            }
+            rs.set(fieldName, fieldType, value == null ? string : parser.readValue(fieldType, value));
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Gets the total count. The value is available after all the records were
+     * read.
+     * 
+     * @return the total count, or null if not requested
+     */
+    public Long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the "next" property of a cursor response. The value is available
+     * after all the records were read.
+     * 
+     * @return true if the cursor has more records
+     */
+    public boolean hasMore() {
+        return more;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
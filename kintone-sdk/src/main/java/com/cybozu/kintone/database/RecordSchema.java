@@ -0,0 +1,173 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The field names and types of the records read by a query, shared by all the
+ * {@link IndexedRecord}s of the same shape. A field is read by its position
+ * in the schema, found once by {@link #indexOf(String)}.
+ *
+ */
+public final class RecordSchema {
+    private final String[] names;
+    private final FieldType[] types;
+    private final Map<String, Integer> indexes;
+    private final Set<String> nameSet;
+
+    /**
+     * Constructor
+     *
+     * @param names
+     *            the field names
+     * @param types
+     *            the field types in the same order
+     */
+    RecordSchema(String[] names, FieldType[] types) {
+        if (names.length != types.length) {
+            throw new IllegalArgumentException("names and types differ in length");
+        }
+        this.names = names;
+        this.types = types;
+        this.indexes = new HashMap<String, Integer>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            indexes.put(names[i], i);
+        }
+        this.nameSet = Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(names)));
+    }
+
+    /**
+     * Gets the position of the field.
+     *
+     * @param name
+     *            field name
+     * @return the position, or -1 if the schema does not have the field
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index.intValue();
+    }
+
+    /**
+     * @return the number of the fields
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param index
+     *            the position of the field
+     * @return field name
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @param index
+     *            the position of the field
+     * @return field type
+     */
+    public FieldType getFieldType(int index) {
+        return types[index];
+    }
+
+    /**
+     * @return the field names in the order of the positions
+     */
+    public Set<String> getFieldNames() {
+        return nameSet;
+    }
+
+    /**
+     * Returns true if the schema has the fields in the same order.
+     *
+     * @param names
+     *            the field names
+     * @param types
+     *            the field types
+     * @return true if they match
+     */
+    boolean matches(List<String> names, List<FieldType> types) {
+        if (names.size() != this.names.length) return false;
+        for (int i = 0; i < this.names.length; i++) {
+            if (types.get(i) != this.types[i] || !names.get(i).equals(this.names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the schema of the fields of a record.
+     *
+     * @param record
+     *            the record
+     * @return the schema
+     */
+    static RecordSchema of(Record record) {
+        List<String> names = new ArrayList<String>(record.getFieldNames());
+        FieldType[] types = new FieldType[names.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = record.getFieldType(names.get(i));
+        }
+        return new RecordSchema(names.toArray(new String[names.size()]), types);
+    }
+
+    /**
+     * Reuses the schemas of the records of the same shape, so a result holds
+     * one schema per shape instead of one per record.
+     */
+    static class Pool {
+        private final Map<String, RecordSchema> schemas = new HashMap<String, RecordSchema>();
+        private RecordSchema last;
+
+        /**
+         * Gets the schema of the fields, creating it on the first use.
+         *
+         * @param names
+         *            the field names
+         * @param types
+         *            the field types
+         * @return the shared schema
+         */
+        RecordSchema get(List<String> names, List<FieldType> types) {
+            if (last != null && last.matches(names, types)) {
+                return last;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < names.size(); i++) {
+                sb.append(types.get(i)).append(':').append(names.get(i)).append('\n');
+            }
+            String key = sb.toString();
+            RecordSchema schema = schemas.get(key);
+            if (schema == null) {
+                schema = new RecordSchema(names.toArray(new String[names.size()]),
+                        types.toArray(new FieldType[types.size()]));
+                schemas.put(key, schema);
+            }
+            last = schema;
+            return schema;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the request body of a request directly to the connection stream.
+ *
+ */
+interface RequestBody {
+
+    /**
+     * Gets the length of the body in bytes.
+     * 
+     * @return the length, or -1 if unknown and the body is sent in chunks
+     */
+    public long getLength();
+
+    /**
+     * Writes the body.
+     * 
+     * @param os
+     *            the request stream, closed by the caller
+     * @throws IOException
+     */
+    public void writeTo(OutputStream os) throws IOException;
+}
@@ -0,0 +1,36 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the response body of a request directly from the connection stream.
+ *
+ */
+interface ResponseHandler<T> {
+
+    /**
+     * Handles the response body.
+     * 
+     * @param is
+     *            the response stream, closed by the caller
+     * @param length
+     *            the content length of the response, or -1 if unknown
+     * @return the result of the request
+     * @throws IOException
+     */
+    public T handle(InputStream is, long length) throws IOException;
+}
@@ -36,6 +36,7 @@ public class ResultSet {
     private Long totalCount = null;
     private Record current = null;
     private Connection connection = null;
+    private RecordSchema schema = null;
 
     /**
      * @param connection
@@ -62,6 +63,7 @@ public class ResultSet {
         records.clear();
         index = 0;
         current = null;
+        schema = null;
     }
 
     /**
@@ -207,6 +209,88 @@ public class ResultSet {
         return current.getString(name);
     }
 
+    /**
+     * Gets the position of the field, by which the field values are read
+     * without looking up the name for every record. The positions follow the
+     * fields of the first record.
+     * 
+     * @param name
+     *            field name
+     * @return the position, or -1 if the first record does not have the field
+     */
+    public int getFieldIndex(String name) {
+        RecordSchema schema = getSchema();
+        return schema == null ? -1 : schema.indexOf(name);
+    }
+
+    /**
+     * Gets the field value at the position as long.
+     * 
+     * @param index
+     *            the position by {@link #getFieldIndex(String)}
+     * @return a long value of the field
+     */
+    public Long getLong(int index) {
+        IndexedRecord record = getIndexedRecord();
+        return record != null ? record.getLong(index) : current.getLong(schema.getName(index));
+    }
+
+    /**
+     * Gets the field value at the position as string.
+     * 
+     * @param index
+     *            the position by {@link #getFieldIndex(String)}
+     * @return a string value of the field
+     */
+    public String getString(int index) {
+        IndexedRecord record = getIndexedRecord();
+        return record != null ? record.getString(index) : current.getString(schema.getName(index));
+    }
+
+    /**
+     * Checks if the field value at the position is empty.
+     * 
+     * @param index
+     *            the position by {@link #getFieldIndex(String)}
+     * @return true if the field value is empty
+     */
+    public boolean isEmpty(int index) {
+        IndexedRecord record = getIndexedRecord();
+        return record != null ? record.isEmpty(index) : current.isEmpty(schema.getName(index));
+    }
+
+    /**
+     * Gets the schema which the positions refer to, creating it from the
+     * first record.
+     * 
+     * @return the schema, or null if there is no record
+     */
+    private RecordSchema getSchema() {
+        if (schema == null && !records.isEmpty()) {
+            Record first = records.get(0);
+            if (first instanceof IndexedRecord && ((IndexedRecord) first).getSchema() != null) {
+                schema = ((IndexedRecord) first).getSchema();
+            } else {
+                schema = RecordSchema.of(first);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * @return the current record if its values are in the order of the
+     *         schema, otherwise null
+     */
+    private IndexedRecord getIndexedRecord() {
+        if (getSchema() == null) {
+            throw new IllegalStateException("no field index");
+        }
+        if (current instanceof IndexedRecord && ((IndexedRecord) current).getSchema() == schema) {
+            return (IndexedRecord) current;
+        }
+        return null;
+    }
+
     /**
      * Gets the field value as user object.
      * 
@@ -0,0 +1,222 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local record store backed by an SQLite database, for Android.
+ *
+ */
+public class SQLiteRecordStore implements LocalRecordStore {
+    private static final int VERSION = 1;
+    private static final String RECORDS = "records";
+    private static final String SYNC_STATE = "sync_state";
+
+    private final Helper helper;
+    private final JsonParser parser = new JsonParser();
+
+    /**
+     * Creates the tables of the store.
+     */
+    private static class Helper extends SQLiteOpenHelper {
+        Helper(Context context, String name) {
+            super(context, name, null, VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + RECORDS + " (app INTEGER NOT NULL, id INTEGER NOT NULL, "
+                    + "revision INTEGER NOT NULL, json TEXT NOT NULL, PRIMARY KEY (app, id))");
+            db.execSQL("CREATE TABLE " + SYNC_STATE + " (app INTEGER PRIMARY KEY, state TEXT)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *            the context of the application
+     * @param name
+     *            the name of the database file
+     */
+    public SQLiteRecordStore(Context context, String name) {
+        this.helper = new Helper(context, name);
+    }
+
+    @Override
+    public void putRecords(long app, List<Record> records) throws DBException {
+        List<ContentValues> rows = new ArrayList<ContentValues>();
+        try {
+            for (Record record : records) {
+                ContentValues values = new ContentValues();
+                values.put("app", app);
+                values.put("id", record.getId());
+                Long revision = record.getRevision();
+                values.put("revision", revision == null ? Long.valueOf(-1) : revision);
+                values.put("json", parser.recordToStoredJson(record));
+                rows.add(values);
+            }
+        } catch (IOException e) {
+            throw new DBException(e, "failed to encode the record");
+        }
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ContentValues values : rows) {
+                db.insertWithOnConflict(RECORDS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void deleteRecords(long app, Collection<Long> ids) throws DBException {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Long id : ids) {
+                db.delete(RECORDS, "app = ? AND id = ?",
+                        new String[] { String.valueOf(app), String.valueOf(id) });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public Record getRecord(long app, long id) throws DBException {
+        Cursor cursor = helper.getReadableDatabase().query(RECORDS, new String[] { "json" },
+                "app = ? AND id = ?", new String[] { String.valueOf(app), String.valueOf(id) },
+                null, null, null);
+        try {
+            return cursor.moveToNext() ? toRecord(cursor.getString(0)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public List<Record> selectRecords(long app, RecordFilter filter) throws DBException {
+        Cursor cursor = helper.getReadableDatabase().query(RECORDS, new String[] { "json" },
+                "app = ?", new String[] { String.valueOf(app) }, null, null, "id");
+        try {
+            List<Record> result = new ArrayList<Record>();
+            while (cursor.moveToNext()) {
+                Record record = toRecord(cursor.getString(0));
+                if (filter == null || filter.accept(record)) {
+                    result.add(record);
+                }
+            }
+            return result;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public Map<Long, Long> getRevisions(long app) throws DBException {
+        Cursor cursor = helper.getReadableDatabase().query(RECORDS,
+                new String[] { "id", "revision" }, "app = ?",
+                new String[] { String.valueOf(app) }, null, null, null);
+        try {
+            Map<Long, Long> revisions = new HashMap<Long, Long>();
+            while (cursor.moveToNext()) {
+                revisions.put(cursor.getLong(0), cursor.getLong(1));
+            }
+            return revisions;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public String getSyncState(long app) throws DBException {
+        Cursor cursor = helper.getReadableDatabase().query(SYNC_STATE, new String[] { "state" },
+                "app = ?", new String[] { String.valueOf(app) }, null, null, null);
+        try {
+            return cursor.moveToNext() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void setSyncState(long app, String state) throws DBException {
+        ContentValues values = new ContentValues();
+        values.put("app", app);
+        values.put("state", state);
+        helper.getWritableDatabase().insertWithOnConflict(SYNC_STATE, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    @Override
+    public void clear(long app) throws DBException {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String[] args = new String[] { String.valueOf(app) };
+        db.beginTransaction();
+        try {
+            db.delete(RECORDS, "app = ?", args);
+            db.delete(SYNC_STATE, "app = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Closes the database.
+     */
+    @Override
+    public void close() {
+        helper.close();
+    }
+
+    /**
+     * Reads the record from the stored json string.
+     *
+     * @param json
+     *            the json string
+     * @return the record
+     * @throws DBException
+     */
+    private Record toRecord(String json) throws DBException {
+        try {
+            return parser.storedJsonToRecord(json);
+        } catch (IOException e) {
+            throw new DBException(e, "failed to decode the record");
+        }
+    }
+}
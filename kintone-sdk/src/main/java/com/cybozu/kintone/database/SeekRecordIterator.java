@@ -0,0 +1,137 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An iterator which reads all the records matching a query in the order of
+ * $id. Each page is selected with "$id &gt; (the last id)" instead of an offset,
+ * so every page costs the same and the 10,000 offset limit does not apply.
+ *
+ */
+public class SeekRecordIterator extends PagedRecordIterator {
+    public static final int PAGE_SIZE = 500;
+
+    private final Connection connection;
+    private final long app;
+    private final String query;
+    private final String[] columns;
+    private final long maxId;
+    private volatile long lastId;
+    private volatile boolean more = true;
+    private final AtomicLong byteCount = new AtomicLong();
+
+    /**
+     * Constructor
+     * 
+     * @param connection
+     *            the connection object
+     * @param app
+     *            application id
+     * @param query
+     *            the condition of the query without "order by", "limit" and
+     *            "offset", or null
+     * @param columns
+     *            column names if needed
+     * @param minId
+     *            the records whose id is greater than this are read
+     * @param maxId
+     *            the records whose id is less than or equal to this are
+     *            read, or -1 for no upper bound
+     * @param executor
+     *            the executor which prefetches the pages, or null
+     */
+    SeekRecordIterator(Connection connection, long app, String query, String[] columns,
+            long minId, long maxId, Executor executor) {
+        super(executor);
+        this.connection = connection;
+        this.app = app;
+        this.query = (query == null || query.trim().length() == 0) ? null : query.trim();
+        this.columns = withId(columns);
+        this.lastId = minId;
+        this.maxId = maxId;
+    }
+
+    /**
+     * Adds $id to the columns, which is needed to select the next page.
+     */
+    private static String[] withId(String[] columns) {
+        if (columns == null) return null;
+        for (String column : columns) {
+            if (column.equals("$id")) return columns;
+        }
+        String[] result = new String[columns.length + 1];
+        System.arraycopy(columns, 0, result, 0, columns.length);
+        result[columns.length] = "$id";
+        return result;
+    }
+
+    /**
+     * Builds the query of the next page.
+     * 
+     * @return query string
+     */
+    private String buildQuery() {
+        StringBuilder sb = new StringBuilder();
+        if (query != null) {
+            sb.append("(");
+            sb.append(query);
+            sb.append(") and ");
+        }
+        sb.append("$id > ");
+        sb.append(lastId);
+        if (maxId >= 0) {
+            sb.append(" and $id <= ");
+            sb.append(maxId);
+        }
+        sb.append(" order by $id asc limit ");
+        sb.append(PAGE_SIZE);
+        return sb.toString();
+    }
+
+    @Override
+    protected List<Record> fetchPage() throws DBException {
+        List<Record> records = connection.selectRecords(app, buildQuery(), columns, byteCount);
+        if (!records.isEmpty()) {
+            lastId = records.get(records.size() - 1).getId();
+        }
+        more = records.size() >= PAGE_SIZE;
+        return records;
+    }
+
+    @Override
+    protected boolean hasMorePages() {
+        return more;
+    }
+
+    /**
+     * @return the number of the response bytes read so far
+     */
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * @return the id of the last record fetched
+     */
+    public long getLastId() {
+        return lastId;
+    }
+}
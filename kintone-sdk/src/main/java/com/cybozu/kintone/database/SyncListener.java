@@ -0,0 +1,39 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import java.util.List;
+
+/**
+ * An interface which receives the changes found by
+ * {@link Connection#sync(long, SyncListener)}, a page at a time.
+ *
+ */
+public interface SyncListener {
+
+    /**
+     * Handles the changes. The sync state is advanced past them only after
+     * this returns, so the changes are delivered again if this throws.
+     *
+     * @param app
+     *            application id
+     * @param changes
+     *            the changes in the order of the ids
+     * @throws DBException
+     *            to abort the sync
+     */
+    public void onChanges(long app, List<RecordChange> changes) throws DBException;
+}
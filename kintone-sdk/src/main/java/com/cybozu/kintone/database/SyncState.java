@@ -0,0 +1,196 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The state of the delta sync of an application.
+ *
+ * The watermark consists of the updated time which the next sync starts
+ * from, and the last $id delivered by a sync in progress, so an interrupted
+ * sync resumes after the last page delivered. It is saved as a string with
+ * {@link #getWatermark()}. The revisions of the known records tell the added
+ * records from the updated ones, skip the records already delivered, and
+ * find the deleted ones, so they must be saved and restored together with
+ * the watermark.
+ *
+ */
+public class SyncState {
+    private static final String SEPARATOR = "\t";
+
+    private String updatedField;
+    private String since;
+    private String latest;
+    private long lastId;
+    private long knownCount;
+    private final Map<Long, Long> revisions;
+
+    /**
+     * Constructor for the first sync.
+     */
+    public SyncState() {
+        this(null, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param watermark
+     *            the watermark saved by {@link #getWatermark()}, or null for
+     *            the first sync
+     * @param revisions
+     *            the revisions of the known records by id, or null if none
+     */
+    public SyncState(String watermark, Map<Long, Long> revisions) {
+        this.revisions = revisions == null ? new HashMap<Long, Long>()
+                : new HashMap<Long, Long>(revisions);
+        if (watermark == null) {
+            return;
+        }
+        String[] parts = watermark.split(SEPARATOR, -1);
+        if (parts.length < 2) {
+            return;
+        }
+        updatedField = emptyToNull(parts[0]);
+        since = emptyToNull(parts[1]);
+        if (parts.length >= 4) {
+            latest = emptyToNull(parts[2]);
+            try {
+                lastId = Long.parseLong(parts[3]);
+            } catch (NumberFormatException e) {
+                lastId = 0;
+            }
+        }
+        if (parts.length >= 5) {
+            try {
+                knownCount = Long.parseLong(parts[4]);
+            } catch (NumberFormatException e) {
+                knownCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the watermark to be saved. The watermark does not contain the
+     * revisions of the known records, which are saved separately, e.g. with
+     * the records, and passed to {@link #SyncState(String, Map)} together.
+     * The watermark records how many records were known, and a sync from the
+     * watermark restored without the revisions fails rather than delivering
+     * every record as added and missing the deletions.
+     *
+     * @return the watermark to be saved, or null if nothing has been synced
+     */
+    public synchronized String getWatermark() {
+        if (updatedField == null && since == null && latest == null && lastId == 0) {
+            return null;
+        }
+        return nullToEmpty(updatedField) + SEPARATOR + nullToEmpty(since) + SEPARATOR
+                + nullToEmpty(latest) + SEPARATOR + lastId + SEPARATOR + revisions.size();
+    }
+
+    /**
+     * @return the code of the updated time field, or null if not known yet
+     */
+    public synchronized String getUpdatedField() {
+        return updatedField;
+    }
+
+    /**
+     * @return the updated time which the next sync starts from, or null if
+     *         the next sync reads all the records
+     */
+    public synchronized String getUpdatedTime() {
+        return since;
+    }
+
+    /**
+     * @return the last id delivered by the sync in progress, or 0
+     */
+    public synchronized long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * @return a copy of the revisions of the known records by id
+     */
+    public synchronized Map<Long, Long> getRevisions() {
+        return new HashMap<Long, Long>(revisions);
+    }
+
+    /**
+     * Forgets the watermark and the known records, so the next sync reads
+     * all the records again.
+     */
+    public synchronized void reset() {
+        updatedField = null;
+        since = null;
+        latest = null;
+        lastId = 0;
+        knownCount = 0;
+        revisions.clear();
+    }
+
+    /**
+     * @return the number of the known records when the watermark was saved,
+     *         or 0 if unknown
+     */
+    synchronized long getKnownCount() {
+        return knownCount;
+    }
+
+    synchronized void setUpdatedField(String updatedField) {
+        this.updatedField = updatedField;
+    }
+
+    synchronized void setLatest(String latest) {
+        this.latest = latest;
+    }
+
+    synchronized void setLastId(long lastId) {
+        this.lastId = lastId;
+    }
+
+    synchronized Long getRevision(long id) {
+        return revisions.get(id);
+    }
+
+    synchronized void putRevision(long id, long revision) {
+        revisions.put(id, revision);
+    }
+
+    synchronized void removeRevision(long id) {
+        revisions.remove(id);
+    }
+
+    /**
+     * Ends the sync in progress, moving the start of the next sync to the
+     * latest updated time read before the pages.
+     */
+    synchronized void complete() {
+        if (updatedField != null && latest != null) {
+            since = latest;
+        }
+        lastId = 0;
+    }
+
+    private static String emptyToNull(String s) {
+        return s.length() == 0 ? null : s;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
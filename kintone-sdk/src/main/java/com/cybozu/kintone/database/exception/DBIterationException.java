@@ -0,0 +1,33 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database.exception;
+
+public class DBIterationException extends RuntimeException {
+    /**
+     * An unchecked exception thrown by the record iterators, whose methods
+     * cannot throw DBException. The cause is the original DBException.
+     */
+
+    private static final long serialVersionUID = 4410870353457219623L;
+
+    public DBIterationException(DBException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public DBException getCause() {
+        return (DBException) super.getCause();
+    }
+}
@@ -0,0 +1,64 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.cybozu.kintone.database.exception;
+
+import com.cybozu.kintone.database.ErrorResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DBPartialInsertException extends DBException {
+    /**
+     * An exception thrown when a chunk of an insert fails after the chunks
+     * before it were inserted. The cause is the original DBException, and the
+     * ids of the records inserted are kept in the order of the records.
+     */
+    private static final long serialVersionUID = -2755713394315850817L;
+    private final List<Long> insertedIds;
+
+    public DBPartialInsertException(DBException cause, List<Long> insertedIds) {
+        super(cause, cause.getMessage());
+        this.insertedIds = Collections.unmodifiableList(new ArrayList<Long>(insertedIds));
+    }
+
+    /**
+     * @return the ids of the records inserted before the failure, which are
+     *         the first ones of the records
+     */
+    public List<Long> getInsertedIds() {
+        return insertedIds;
+    }
+
+    @Override
+    public DBException getCause() {
+        return (DBException) super.getCause();
+    }
+
+    @Override
+    public ErrorResponse getErrorResponse() {
+        return getCause().getErrorResponse();
+    }
+
+    @Override
+    public int getHttpStatus() {
+        return getCause().getHttpStatus();
+    }
+
+    @Override
+    public String toString() {
+        return getCause().toString() + ", inserted: " + insertedIds.size();
+    }
+}
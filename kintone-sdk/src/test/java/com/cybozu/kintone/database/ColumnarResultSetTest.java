@@ -0,0 +1,108 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.TypeMismatchException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ColumnarResultSetTest {
+
+    private static ColumnarResultSet parse(String... numbers) throws IOException {
+        StringBuilder sb = new StringBuilder("{\"records\":[");
+        for (int i = 0; i < numbers.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"$id\":{\"type\":\"__ID__\",\"value\":\"").append(i + 1).append("\"}");
+            if (numbers[i] != null) {
+                sb.append(",\"num\":{\"type\":\"NUMBER\",\"value\":\"").append(numbers[i])
+                        .append("\"}");
+            }
+            sb.append('}');
+        }
+        sb.append("],\"totalCount\":\"").append(numbers.length).append("\"}");
+        return new JsonParser().jsonToColumnarResultSet(null,
+                new ByteArrayInputStream(sb.toString().getBytes("UTF-8")));
+    }
+
+    @Test
+    public void integersAreKeptAsLongs() throws Exception {
+        ColumnarResultSet rs = parse("1", "-20", "0");
+        assertEquals(3, rs.size());
+        assertEquals(Long.valueOf(3), rs.getTotalCount());
+        rs.first();
+        assertEquals(Long.valueOf(1), rs.getId());
+        assertEquals(Long.valueOf(1), rs.getLong("num"));
+        assertEquals("1", rs.getString("num"));
+        rs.next();
+        assertEquals(Long.valueOf(-20), rs.getLong("num"));
+        assertEquals("-20", rs.getString("num"));
+        rs.next();
+        assertEquals("0", rs.getString("num"));
+    }
+
+    @Test
+    public void nonCanonicalNumberTurnsColumnIntoStrings() throws Exception {
+        ColumnarResultSet rs = parse("1", "", "2", "1.5", "007", "-0", "1234567890123456789", "3");
+        String[] expected = { "1", "", "2", "1.5", "007", "-0", "1234567890123456789", "3" };
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(rs.next());
+            assertEquals(expected[i], rs.getString("num"));
+            assertEquals(expected[i], rs.getRecord().getString("num"));
+        }
+
+        rs.first();
+        assertEquals(Long.valueOf(1), rs.getLong("num"));
+        rs.next();
+        try {
+            rs.getLong("num");
+            fail();
+        } catch (TypeMismatchException e) {
+        }
+        rs.next();
+        rs.next();
+        try {
+            rs.getLong("num");
+            fail();
+        } catch (TypeMismatchException e) {
+        }
+        rs.next();
+        assertEquals(Long.valueOf(7), rs.getLong("num"));
+    }
+
+    @Test
+    public void blankBeforeFallbackIsKept() throws Exception {
+        ColumnarResultSet rs = parse("", "1.5");
+        rs.first();
+        assertEquals("", rs.getString("num"));
+        rs.next();
+        assertEquals("1.5", rs.getString("num"));
+    }
+
+    @Test
+    public void missingFieldReadsAsNull() throws Exception {
+        ColumnarResultSet rs = parse("1", null, "2.5");
+        rs.first();
+        rs.next();
+        assertNull(rs.getString("num"));
+        assertNull(rs.getLong("num"));
+        assertFalse(rs.getRecord().hasField("num"));
+        rs.next();
+        assertEquals("2.5", rs.getString("num"));
+    }
+}
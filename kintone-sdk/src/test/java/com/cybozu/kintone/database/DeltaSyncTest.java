@@ -0,0 +1,208 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.cybozu.kintone.database.exception.DBException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeltaSyncTest {
+    private static final long APP = 1;
+
+    private FakeRecordTransport transport;
+    private Connection connection;
+
+    /**
+     * Collects the changes by type.
+     */
+    private static class Collector implements SyncListener {
+        final List<Long> added = new ArrayList<Long>();
+        final List<Long> updated = new ArrayList<Long>();
+        final List<Long> deleted = new ArrayList<Long>();
+
+        @Override
+        public void onChanges(long app, List<RecordChange> changes) throws DBException {
+            for (RecordChange change : changes) {
+                switch (change.getType()) {
+                case ADDED:
+                    added.add(change.getId());
+                    break;
+                case UPDATED:
+                    updated.add(change.getId());
+                    break;
+                case DELETED:
+                    deleted.add(change.getId());
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String time(int minute) {
+        return String.format("2020-01-01T00:%02d:00Z", minute);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        transport = new FakeRecordTransport();
+        connection = new Connection("example.cybozu.com", "user", "password");
+        connection.setTransport(transport);
+    }
+
+    private void fill(int count) {
+        for (long id = 1; id <= count; id++) {
+            transport.put(id, 1, time((int) (id % 10)));
+        }
+    }
+
+    @Test
+    public void fullSyncThenDelta() throws Exception {
+        fill(600);
+        SyncState state = new SyncState();
+        Collector first = new Collector();
+        assertEquals(600, connection.sync(APP, state, first));
+        assertEquals(600, first.added.size());
+        assertEquals(FakeRecordTransport.UPDATED_FIELD, state.getUpdatedField());
+        assertEquals(time(9), state.getUpdatedTime());
+        assertEquals(0, state.getLastId());
+
+        Collector noop = new Collector();
+        assertEquals(0, connection.sync(APP, state, noop));
+
+        transport.put(5, 2, time(20));
+        transport.records.remove(7L);
+        transport.put(700, 1, time(21));
+        Collector delta = new Collector();
+        assertEquals(3, connection.sync(APP, state, delta));
+        assertEquals(singleton(700), delta.added);
+        assertEquals(singleton(5), delta.updated);
+        assertEquals(singleton(7), delta.deleted);
+        assertEquals(time(21), state.getUpdatedTime());
+        assertFalse(state.getRevisions().containsKey(7L));
+    }
+
+    @Test
+    public void recordUpdatedDuringPassIsNotLost() throws Exception {
+        for (long id = 1; id <= 600; id++) {
+            transport.put(id, 1, time(0));
+        }
+        final FakeRecordTransport edited = new FakeRecordTransport() {
+            private boolean done;
+
+            @Override
+            void beforeQuery(String query) {
+                if (!done && query.contains("$id > 500")) {
+                    // updated behind the current page, then a later one
+                    put(10, 2, time(5));
+                    put(550, 2, time(6));
+                    done = true;
+                }
+            }
+        };
+        edited.records.putAll(transport.records);
+        connection.setTransport(edited);
+
+        SyncState state = new SyncState();
+        connection.sync(APP, state, new Collector());
+        assertEquals(time(0), state.getUpdatedTime());
+
+        Collector next = new Collector();
+        connection.sync(APP, state, next);
+        assertEquals(singleton(10), next.updated);
+        assertTrue(next.added.isEmpty());
+    }
+
+    @Test
+    public void failedSyncResumesAfterLastPage() throws Exception {
+        fill(600);
+        SyncState state = new SyncState();
+        final Collector collector = new Collector();
+        SyncListener failing = new SyncListener() {
+            private int pages;
+
+            @Override
+            public void onChanges(long app, List<RecordChange> changes) throws DBException {
+                if (++pages == 2) {
+                    throw new DBException("failed");
+                }
+                collector.onChanges(app, changes);
+            }
+        };
+        try {
+            connection.sync(APP, state, failing);
+            fail();
+        } catch (DBException e) {
+        }
+        assertEquals(500, state.getLastId());
+        assertEquals(500, collector.added.size());
+
+        SyncState restored = new SyncState(state.getWatermark(), state.getRevisions());
+        transport.queries.clear();
+        connection.sync(APP, restored, collector);
+        assertEquals(600, collector.added.size());
+        assertEquals(600, new HashSet<Long>(collector.added).size());
+        assertTrue(transport.queries.get(0).contains("$id > 500"));
+        assertEquals(time(9), restored.getUpdatedTime());
+    }
+
+    @Test
+    public void watermarkRoundTrip() throws Exception {
+        fill(20);
+        SyncState state = new SyncState();
+        connection.sync(APP, state, new Collector());
+
+        SyncState restored = new SyncState(state.getWatermark(), state.getRevisions());
+        assertEquals(state.getWatermark(), restored.getWatermark());
+        assertEquals(state.getUpdatedField(), restored.getUpdatedField());
+        assertEquals(state.getUpdatedTime(), restored.getUpdatedTime());
+        assertEquals(state.getLastId(), restored.getLastId());
+        assertEquals(state.getRevisions(), restored.getRevisions());
+
+        transport.records.remove(3L);
+        Collector delta = new Collector();
+        assertEquals(1, connection.sync(APP, restored, delta));
+        assertEquals(singleton(3), delta.deleted);
+    }
+
+    @Test(expected = DBException.class)
+    public void watermarkWithoutRevisionsIsRefused() throws Exception {
+        fill(20);
+        SyncState state = new SyncState();
+        connection.sync(APP, state, new Collector());
+
+        connection.sync(APP, new SyncState(state.getWatermark(), null), new Collector());
+    }
+
+    @Test
+    public void legacyWatermark() {
+        SyncState state = new SyncState("upd\t" + time(3), null);
+        assertEquals("upd", state.getUpdatedField());
+        assertEquals(time(3), state.getUpdatedTime());
+        assertEquals(0, state.getLastId());
+        assertNull(new SyncState().getWatermark());
+    }
+
+    private static List<Long> singleton(long id) {
+        List<Long> list = new ArrayList<Long>();
+        list.add(id);
+        return list;
+    }
+}
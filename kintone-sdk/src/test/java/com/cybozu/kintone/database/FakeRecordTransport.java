@@ -0,0 +1,176 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A transport which answers the record queries from an in-memory table,
+ * enough for the paging, the ordering by the updated time and the limit used
+ * by the sync. Each record has the id, the revision and the updated time in
+ * the field "upd".
+ */
+class FakeRecordTransport implements HttpTransport {
+    static final String UPDATED_FIELD = "upd";
+
+    private static final Pattern SINCE = Pattern.compile(UPDATED_FIELD + " >= \"([^\"]*)\"");
+    private static final Pattern AFTER_ID = Pattern.compile("\\$id > (\\d+)");
+    private static final Pattern LIMIT = Pattern.compile("limit (\\d+)");
+
+    final TreeMap<Long, String[]> records = new TreeMap<Long, String[]>();
+    final List<String> queries = new ArrayList<String>();
+
+    /**
+     * Stores a record.
+     *
+     * @param id
+     *            record id
+     * @param revision
+     *            revision number
+     * @param updated
+     *            the updated time
+     */
+    synchronized void put(long id, long revision, String updated) {
+        records.put(id, new String[] { Long.toString(revision), updated });
+    }
+
+    /**
+     * Called before a query is answered.
+     *
+     * @param query
+     *            the query
+     */
+    void beforeQuery(String query) {
+    }
+
+    @Override
+    public HttpURLConnection open(final URL url, Proxy proxy) throws IOException {
+        return new HttpURLConnection(url) {
+            private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+            @Override
+            public void connect() {
+            }
+
+            @Override
+            public void disconnect() {
+            }
+
+            @Override
+            public boolean usingProxy() {
+                return false;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return body;
+            }
+
+            @Override
+            public int getResponseCode() {
+                return 200;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                String query = "";
+                String params = url.getQuery() == null ? "" : url.getQuery();
+                for (String param : params.split("&")) {
+                    if (param.startsWith("query=")) {
+                        query = URLDecoder.decode(param.substring(6), "UTF-8");
+                    }
+                }
+                return new ByteArrayInputStream(respond(query).getBytes("UTF-8"));
+            }
+        };
+    }
+
+    private String respond(String query) {
+        synchronized (this) {
+            queries.add(query);
+        }
+        beforeQuery(query);
+
+        String since = null;
+        long afterId = 0;
+        int limit = 100;
+        Matcher m = SINCE.matcher(query);
+        if (m.find()) {
+            since = m.group(1);
+        }
+        m = AFTER_ID.matcher(query);
+        if (m.find()) {
+            afterId = Long.parseLong(m.group(1));
+        }
+        m = LIMIT.matcher(query);
+        if (m.find()) {
+            limit = Integer.parseInt(m.group(1));
+        }
+
+        List<Map.Entry<Long, String[]>> matched = new ArrayList<Map.Entry<Long, String[]>>();
+        synchronized (this) {
+            for (Map.Entry<Long, String[]> entry : records.entrySet()) {
+                if (entry.getKey() <= afterId) continue;
+                if (since != null && entry.getValue()[1].compareTo(since) < 0) continue;
+                matched.add(new AbstractMap.SimpleEntry<Long, String[]>(
+                        entry.getKey(), entry.getValue().clone()));
+            }
+        }
+        if (query.contains("order by " + UPDATED_FIELD + " desc")) {
+            Collections.sort(matched, new Comparator<Map.Entry<Long, String[]>>() {
+                @Override
+                public int compare(Map.Entry<Long, String[]> a, Map.Entry<Long, String[]> b) {
+                    return b.getValue()[1].compareTo(a.getValue()[1]);
+                }
+            });
+        }
+
+        StringBuilder sb = new StringBuilder("{\"records\":[");
+        for (int i = 0; i < matched.size() && i < limit; i++) {
+            Map.Entry<Long, String[]> entry = matched.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"$id\":{\"type\":\"__ID__\",\"value\":\"").append(entry.getKey())
+                    .append("\"},\"$revision\":{\"type\":\"__REVISION__\",\"value\":\"")
+                    .append(entry.getValue()[0]).append("\"},\"").append(UPDATED_FIELD)
+                    .append("\":{\"type\":\"UPDATED_TIME\",\"value\":\"")
+                    .append(entry.getValue()[1]).append("\"}}");
+        }
+        return sb.append("],\"totalCount\":null}").toString();
+    }
+
+    @Override
+    public void release(HttpURLConnection conn, boolean reusable) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
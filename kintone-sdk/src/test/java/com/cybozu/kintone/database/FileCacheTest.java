@@ -0,0 +1,147 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class FileCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File download(FileCache cache, int length) throws IOException {
+        File file = cache.createTempFile();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(new byte[length]);
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void putAndGet() throws Exception {
+        FileCache cache = new FileCache(folder.newFolder(), 100);
+        File tempFile = download(cache, 10);
+        File file = cache.put("key1", tempFile);
+
+        assertFalse(tempFile.exists());
+        assertEquals(file, cache.get("key1"));
+        assertEquals(10, file.length());
+        assertNull(cache.get("key2"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        cache.close();
+    }
+
+    @Test
+    public void journalSurvivesReopen() throws Exception {
+        File dir = folder.newFolder();
+        FileCache cache = new FileCache(dir, 100);
+        cache.put("key1", download(cache, 10));
+        cache.put("key2", download(cache, 20));
+        cache.put("key3", download(cache, 30));
+        cache.remove("key2");
+        cache.get("key1");
+        cache.close();
+
+        cache = new FileCache(dir, 100);
+        assertEquals(2, cache.getCount());
+        assertEquals(40, cache.getSize());
+        assertNull(cache.get("key2"));
+
+        // key3 is the least recently used one
+        cache.put("key4", download(cache, 70));
+        assertNull(cache.get("key3"));
+        assertNotNull(cache.get("key1"));
+        cache.close();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        FileCache cache = new FileCache(folder.newFolder(), 100);
+        File file1 = cache.put("key1", download(cache, 40));
+        cache.put("key2", download(cache, 40));
+        cache.get("key1");
+        cache.put("key3", download(cache, 40));
+
+        assertTrue(file1.exists());
+        assertNull(cache.get("key2"));
+        assertEquals(80, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        cache.close();
+    }
+
+    @Test
+    public void oversizedFileIsNotCached() throws Exception {
+        FileCache cache = new FileCache(folder.newFolder(), 100);
+        cache.put("small", download(cache, 10));
+        File tempFile = download(cache, 101);
+        File file = cache.put("large", tempFile);
+
+        assertEquals(tempFile, file);
+        assertTrue(file.exists());
+        assertNull(cache.get("large"));
+        assertNotNull(cache.get("small"));
+        assertEquals(0, cache.getEvictionCount());
+        cache.close();
+    }
+
+    @Test
+    public void onlyOwnFilesAreCleanedUp() throws Exception {
+        File dir = folder.newFolder();
+        FileCache cache = new FileCache(dir, 100);
+        File cached = cache.put("key1", download(cache, 10));
+        File interrupted = download(cache, 10);
+        cache.close();
+
+        File orphan = new File(dir, "0123456789abcdef0123456789abcdef.bin");
+        assertTrue(orphan.createNewFile());
+        File foreign = new File(dir, "notes.txt");
+        assertTrue(foreign.createNewFile());
+
+        cache = new FileCache(dir, 100);
+        assertTrue(cached.exists());
+        assertFalse(interrupted.exists());
+        assertFalse(orphan.exists());
+        assertTrue(foreign.exists());
+        cache.close();
+    }
+
+    @Test
+    public void journalBackupIsRecovered() throws Exception {
+        File dir = folder.newFolder();
+        FileCache cache = new FileCache(dir, 100);
+        cache.put("key1", download(cache, 10));
+        cache.close();
+
+        // a crash after the journal was moved aside but before the new one was in place
+        File journal = new File(dir, "journal");
+        assertTrue(journal.renameTo(new File(dir, "journal.bak")));
+
+        cache = new FileCache(dir, 100);
+        assertNotNull(cache.get("key1"));
+        assertFalse(new File(dir, "journal.bak").exists());
+        cache.close();
+    }
+}
@@ -0,0 +1,206 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FileRecordStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Record record(long id, long revision, String text) {
+        Record record = new Record(id, revision);
+        record.setString("text", text);
+        return record;
+    }
+
+    private File logFile(File dir, long app) {
+        return new File(dir, "app-" + app + ".log");
+    }
+
+    private static int countLines(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            int count = 0;
+            while (reader.readLine() != null) {
+                count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void reopenReplaysTheLog() throws Exception {
+        File dir = folder.newFolder();
+        FileRecordStore store = new FileRecordStore(dir);
+        store.putRecords(1, Arrays.asList(record(1, 1, "a"), record(2, 1, "b")));
+        store.putRecords(1, Arrays.asList(record(2, 2, "b2")));
+        store.deleteRecords(1, Collections.singletonList(1L));
+        store.setSyncState(1, "watermark");
+        store.close();
+
+        store = new FileRecordStore(dir);
+        assertNull(store.getRecord(1, 1));
+        Record record = store.getRecord(1, 2);
+        assertEquals("b2", record.getString("text"));
+        assertEquals(Long.valueOf(2), record.getRevision());
+        Map<Long, Long> revisions = store.getRevisions(1);
+        assertEquals(1, revisions.size());
+        assertEquals(Long.valueOf(2), revisions.get(2L));
+        assertEquals("watermark", store.getSyncState(1));
+        store.close();
+    }
+
+    @Test
+    public void uncommittedChangesAreIgnored() throws Exception {
+        File dir = folder.newFolder();
+        FileRecordStore store = new FileRecordStore(dir);
+        store.putRecords(1, Arrays.asList(record(1, 1, "a")));
+        store.close();
+
+        // a crash in the middle of a change leaves it without the commit line
+        OutputStream os = new FileOutputStream(logFile(dir, 1), true);
+        try {
+            os.write("D 1\nP 2 1 {\"broken".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+
+        store = new FileRecordStore(dir);
+        assertEquals("a", store.getRecord(1, 1).getString("text"));
+        assertNull(store.getRecord(1, 2));
+        store.close();
+    }
+
+    @Test
+    public void logIsCompacted() throws Exception {
+        File dir = folder.newFolder();
+        FileRecordStore store = new FileRecordStore(dir);
+        for (int i = 1; i <= 1500; i++) {
+            store.putRecords(1, Arrays.asList(record(1, i, "v" + i)));
+        }
+        store.close();
+
+        assertTrue(countLines(logFile(dir, 1)) < 1500);
+        assertFalse(new File(dir, "app-1.log.tmp").exists());
+        store = new FileRecordStore(dir);
+        assertEquals("v1500", store.getRecord(1, 1).getString("text"));
+        store.close();
+    }
+
+    @Test
+    public void clearRemovesRecordsAndState() throws Exception {
+        File dir = folder.newFolder();
+        FileRecordStore store = new FileRecordStore(dir);
+        store.putRecords(1, Arrays.asList(record(1, 1, "a")));
+        store.putRecords(2, Arrays.asList(record(1, 1, "other app")));
+        store.setSyncState(1, "watermark");
+        store.clear(1);
+        store.close();
+
+        store = new FileRecordStore(dir);
+        assertTrue(store.selectRecords(1, null).isEmpty());
+        assertNull(store.getSyncState(1));
+        assertEquals("other app", store.getRecord(2, 1).getString("text"));
+        store.close();
+    }
+
+    @Test
+    public void backupIsRecoveredAfterCrash() throws Exception {
+        File dir = folder.newFolder();
+        FileRecordStore store = new FileRecordStore(dir);
+        store.putRecords(1, Arrays.asList(record(1, 1, "a")));
+        store.close();
+
+        // a crash after the log was moved aside but before the new one was in place
+        File log = logFile(dir, 1);
+        File bak = new File(log.getPath() + ".bak");
+        assertTrue(log.renameTo(bak));
+
+        store = new FileRecordStore(dir);
+        assertEquals("a", store.getRecord(1, 1).getString("text"));
+        store.close();
+        assertFalse(bak.exists());
+    }
+
+    @Test
+    public void staleBackupIsDropped() throws Exception {
+        File dir = folder.newFolder();
+        FileRecordStore store = new FileRecordStore(dir);
+        store.putRecords(1, Arrays.asList(record(1, 2, "new")));
+        store.close();
+
+        File bak = new File(logFile(dir, 1).getPath() + ".bak");
+        OutputStream os = new FileOutputStream(bak);
+        try {
+            os.write("C\n".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+
+        store = new FileRecordStore(dir);
+        assertEquals("new", store.getRecord(1, 1).getString("text"));
+        store.close();
+        assertFalse(bak.exists());
+    }
+
+    @Test
+    public void replaceOverExistingFile() throws Exception {
+        File dir = folder.newFolder();
+        File file = new File(dir, "file");
+        File tmp = new File(dir, "file.tmp");
+        write(file, "old");
+        write(tmp, "new");
+
+        FileRecordStore.replace(tmp, file);
+
+        assertFalse(tmp.exists());
+        assertFalse(new File(dir, "file.bak").exists());
+        assertEquals(3, file.length());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            assertEquals("new", reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(text.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IndexedRecordTest {
+
+    private static List<Record> parse(String json) throws Exception {
+        JsonParser parser = new JsonParser();
+        parser.setIndexedRecords(true);
+        return read(parser, json);
+    }
+
+    private static List<Record> read(JsonParser parser, String json) throws Exception {
+        RecordReader reader = parser.openRecordReader(
+                new ByteArrayInputStream(json.getBytes("UTF-8")));
+        List<Record> records = new ArrayList<Record>();
+        try {
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    private static String record(long id, String text, String number) {
+        return "{\"$id\":{\"type\":\"__ID__\",\"value\":\"" + id + "\"},"
+                + "\"$revision\":{\"type\":\"__REVISION__\",\"value\":\"3\"},"
+                + "\"text\":{\"type\":\"SINGLE_LINE_TEXT\",\"value\":\"" + text + "\"},"
+                + "\"num\":{\"type\":\"NUMBER\",\"value\":\"" + number + "\"}}";
+    }
+
+    private static List<Record> parseLazily(String json, boolean indexed) throws Exception {
+        JsonParser parser = new JsonParser();
+        parser.setIndexedRecords(indexed);
+        parser.setLazyFields(true);
+        return read(parser, json);
+    }
+
+    private static IndexedRecord parseOne() throws Exception {
+        return (IndexedRecord) parse("{\"records\":[" + record(1, "a", "10") + "]}").get(0);
+    }
+
+    @Test
+    public void recordsOfSameShapeShareSchema() throws Exception {
+        List<Record> records = parse("{\"records\":[" + record(1, "a", "10") + ","
+                + record(2, "b", "20") + "]}");
+        IndexedRecord first = (IndexedRecord) records.get(0);
+        IndexedRecord second = (IndexedRecord) records.get(1);
+        assertSame(first.getSchema(), second.getSchema());
+
+        int index = first.getSchema().indexOf("text");
+        assertEquals("a", first.getString(index));
+        assertEquals("b", second.getString("text"));
+        assertEquals(Long.valueOf(20), second.getLong("num"));
+        assertEquals(Long.valueOf(2), second.getId());
+        assertEquals(Long.valueOf(3), second.getRevision());
+        assertEquals(FieldType.NUMBER, second.getFieldType("num"));
+    }
+
+    @Test
+    public void addingFieldSwitchesToMapLayout() throws Exception {
+        IndexedRecord record = parseOne();
+        int index = record.getSchema().indexOf("text");
+
+        record.setString("added", "x");
+
+        assertNull(record.getSchema());
+        assertEquals("a", record.getString("text"));
+        assertEquals(Long.valueOf(10), record.getLong("num"));
+        assertEquals("x", record.getString("added"));
+        assertEquals(FieldType.NUMBER, record.getFieldType("num"));
+        assertTrue(record.getFieldNames().contains("added"));
+        assertEquals(record.getFieldNames().size(), record.getEntrySet().size());
+        try {
+            record.getValue(index);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void replacingFieldSwitchesToMapLayout() throws Exception {
+        IndexedRecord record = parseOne();
+        record.setString("text", "b");
+
+        assertNull(record.getSchema());
+        assertEquals("b", record.getString("text"));
+        assertEquals(Long.valueOf(10), record.getLong("num"));
+    }
+
+    @Test
+    public void fieldObjectsWriteThrough() throws Exception {
+        IndexedRecord record = parseOne();
+        record.getField("text").setValue("changed");
+        assertNotNull(record.getSchema());
+        assertEquals("changed", record.getString("text"));
+
+        for (Map.Entry<String, Field> entry : record.getEntrySet()) {
+            if (entry.getKey().equals("num")) {
+                entry.getValue().setValue("20");
+            }
+        }
+        assertNotNull(record.getSchema());
+        assertEquals(Long.valueOf(20), record.getLong("num"));
+    }
+
+    @Test
+    public void fieldObjectsFollowMapLayout() throws Exception {
+        IndexedRecord record = parseOne();
+        Field text = record.getField("text");
+        Field num = record.getField("num");
+
+        text.setFieldType(FieldType.MULTI_LINE_TEXT);
+        assertNull(record.getSchema());
+        assertEquals(FieldType.MULTI_LINE_TEXT, record.getFieldType("text"));
+
+        num.setValue("30");
+        assertEquals(Long.valueOf(30), record.getLong("num"));
+        record.getField("num").setValue("40");
+        assertEquals("40", num.getValue());
+    }
+
+    @Test
+    public void cloneIsIndependent() throws Exception {
+        IndexedRecord record = parseOne();
+        Record copy = (Record) record.clone();
+        copy.setString("text", "b");
+
+        assertNotNull(record.getSchema());
+        assertEquals("a", record.getString("text"));
+        assertEquals("b", copy.getString("text"));
+    }
+
+    @Test
+    public void schemaOfRecord() throws Exception {
+        Record record = new Record(1, 1);
+        record.setString("text", "a");
+        record.setLong("num", 10);
+        RecordSchema schema = RecordSchema.of(record);
+
+        assertEquals(2, schema.size());
+        int index = schema.indexOf("num");
+        assertEquals("num", schema.getName(index));
+        assertEquals(FieldType.NUMBER, schema.getFieldType(index));
+        assertEquals(-1, schema.indexOf("missing"));
+    }
+
+    @Test
+    public void lazyFieldsAreDecodedOnRead() throws Exception {
+        String json = "{\"records\":[{\"$id\":{\"type\":\"__ID__\",\"value\":\"1\"},"
+                + "\"users\":{\"type\":\"USER_SELECT\",\"value\":"
+                + "[{\"code\":\"user1\",\"name\":\"User 1\",\"extra\":[1.5,true,null]}]},"
+                + "\"table\":{\"type\":\"SUBTABLE\",\"value\":[{\"id\":\"7\",\"value\":"
+                + "{\"item\":{\"type\":\"SINGLE_LINE_TEXT\",\"value\":\"a\"}}}]},"
+                + "\"tags\":{\"type\":\"CHECK_BOX\",\"value\":null}}]}";
+        for (boolean indexed : new boolean[] { true, false }) {
+            Record record = parseLazily(json, indexed).get(0);
+            assertEquals(indexed, record instanceof IndexedRecord);
+            assertEquals("user1", record.getUsers("users").get(0).getCode());
+            assertEquals("a", record.getSubtable("table").get(0).getString("item"));
+            assertNull(record.getField("tags").getValue());
+        }
+    }
+}
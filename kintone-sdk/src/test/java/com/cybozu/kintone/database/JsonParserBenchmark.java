@@ -0,0 +1,383 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the reflective decoding of the field values, which built a new
+ * Gson and a TypeToken for every value, with the shared
+ * {@link JsonAdapters#GSON} and its hand-written type adapters, and the
+ * linear scan of the field types by name with the map of
+ * {@link FieldType#getEnum(String)}. It also prints the heap held by the
+ * records of the response parsed eagerly and with the lazy fields.
+ *
+ * This is a plain main rather than a unit test, so the test task does not
+ * run it. Run it with the test classes and gson on the class path:
+ *
+ * <pre>
+ * java -cp ... com.cybozu.kintone.database.JsonParserBenchmark [records.json]
+ * </pre>
+ *
+ * Without an argument a response of 500 records is generated, with user,
+ * file, check box and subtable fields. A records.json saved from the server
+ * may be given instead.
+ *
+ */
+public class JsonParserBenchmark {
+    private static final int RECORDS = 500;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+
+    // keeps the parsed records reachable while the heap is measured
+    private static Object retained;
+
+    /**
+     * A pass of a benchmark, which returns a checksum so the work is not
+     * optimized away.
+     */
+    private static abstract class Task {
+        abstract long run() throws IOException;
+    }
+
+    /**
+     * A field value of the response with its type.
+     */
+    private static class Value {
+        final String typeName;
+        final FieldType type;
+        final JsonElement element;
+
+        Value(String typeName, JsonElement element) {
+            this.typeName = typeName;
+            this.type = FieldType.getEnum(typeName);
+            this.element = element;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        byte[] json = args.length > 0 ? readFile(new File(args[0])) : generate(RECORDS)
+                .getBytes("UTF-8");
+        final List<Value> values = flatten(json);
+        final JsonParser parser = new JsonParser();
+        System.out.println(String.format("%d bytes, %d field values", json.length, values.size()));
+
+        report("decode (new Gson per value)", values.size(), new Task() {
+            @Override
+            long run() throws IOException {
+                long sum = 0;
+                for (Value value : values) {
+                    sum += checksum(legacyValue(value.type, value.element));
+                }
+                return sum;
+            }
+        });
+        report("decode (JsonAdapters.GSON)", values.size(), new Task() {
+            @Override
+            long run() throws IOException {
+                long sum = 0;
+                for (Value value : values) {
+                    sum += checksum(parser.readValue(value.type, value.element));
+                }
+                return sum;
+            }
+        });
+
+        report("field type (linear scan)", values.size(), new Task() {
+            @Override
+            long run() {
+                long sum = 0;
+                for (Value value : values) {
+                    sum += legacyGetEnum(value.typeName).ordinal();
+                }
+                return sum;
+            }
+        });
+        report("field type (FieldType.getEnum)", values.size(), new Task() {
+            @Override
+            long run() {
+                long sum = 0;
+                for (Value value : values) {
+                    sum += FieldType.getEnum(value.typeName).ordinal();
+                }
+                return sum;
+            }
+        });
+
+        final byte[] response = json;
+        report("parse the whole response", values.size(), new Task() {
+            @Override
+            long run() throws IOException {
+                InputStream is = new ByteArrayInputStream(response);
+                return parser.jsonToResultSet(null, is).size();
+            }
+        });
+
+        reportHeap("heap (eager)", response, false, false);
+        reportHeap("heap (lazy fields)", response, true, false);
+        reportHeap("heap (lazy indexed records)", response, true, true);
+    }
+
+    /**
+     * Parses the response and prints the heap held by the records, measured
+     * roughly by the used memory after a garbage collection.
+     */
+    private static void reportHeap(String label, byte[] response, boolean lazyFields,
+            boolean indexedRecords) throws IOException {
+        JsonParser parser = new JsonParser();
+        parser.setLazyFields(lazyFields);
+        parser.setIndexedRecords(indexedRecords);
+        retained = null;
+        long before = usedMemory();
+        ResultSet rs = parser.jsonToResultSet(null, new ByteArrayInputStream(response));
+        retained = rs;
+        long after = usedMemory();
+        System.out.println(String.format("%-32s %8.2f MB for %d records", label,
+                (after - before) / 1024.0 / 1024.0, rs.size()));
+        retained = null;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs the task and prints the mean time of a pass and of a field value.
+     */
+    private static void report(String label, int count, Task task) throws IOException {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            checksum += task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            checksum += task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%-32s %8.2f ms/pass %8.1f ns/value (checksum %d)",
+                label, elapsed / 1e6 / ITERATIONS, (double) elapsed / ITERATIONS / count,
+                checksum));
+    }
+
+    /**
+     * Decodes a value as the parser did before {@link JsonAdapters}, with a
+     * new Gson and a new TypeToken for every value.
+     */
+    private static Object legacyValue(FieldType type, JsonElement element) {
+        if (element.isJsonNull()) {
+            return null;
+        }
+        switch (type) {
+        case CHECK_BOX:
+        case MULTI_SELECT:
+        case CATEGORY: {
+            Type collectionType = new TypeToken<Collection<String>>() {
+            }.getType();
+            return new Gson().fromJson(element, collectionType);
+        }
+        case FILE: {
+            Type collectionType = new TypeToken<Collection<FileDto>>() {
+            }.getType();
+            return new Gson().fromJson(element, collectionType);
+        }
+        case CREATOR:
+        case MODIFIER:
+            return new Gson().fromJson(element, UserDto.class);
+        case USER_SELECT:
+        case ORGANIZATION_SELECT:
+        case GROUP_SELECT:
+        case STATUS_ASSIGNEE: {
+            Type collectionType = new TypeToken<Collection<UserDto>>() {
+            }.getType();
+            return new Gson().fromJson(element, collectionType);
+        }
+        case __ID__:
+        case __REVISION__:
+            return Long.valueOf(element.getAsString());
+        default:
+            return element.getAsString();
+        }
+    }
+
+    /**
+     * Finds the field type as {@link FieldType#getEnum(String)} did before
+     * the map, by comparing the name with every type.
+     */
+    private static FieldType legacyGetEnum(String str) {
+        for (FieldType value : FieldType.values()) {
+            if (str.equals(value.toString())) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static long checksum(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        return value == null ? 0 : 1;
+    }
+
+    /**
+     * Collects the field values of the records, and of the rows of the
+     * subtables in place of the subtables themselves.
+     */
+    private static List<Value> flatten(byte[] json) throws IOException {
+        JsonElement root = new com.google.gson.JsonParser().parse(new String(json, "UTF-8"));
+        List<Value> values = new ArrayList<Value>();
+        for (JsonElement record : root.getAsJsonObject().getAsJsonArray("records")) {
+            flattenRecord(record.getAsJsonObject(), values);
+        }
+        return values;
+    }
+
+    private static void flattenRecord(JsonObject record, List<Value> values) {
+        for (Map.Entry<String, JsonElement> entry : record.entrySet()) {
+            JsonObject field = entry.getValue().getAsJsonObject();
+            String typeName = field.get("type").getAsString();
+            JsonElement value = field.get("value");
+            if (typeName.equals("SUBTABLE")) {
+                for (JsonElement row : value.getAsJsonArray()) {
+                    flattenRecord(row.getAsJsonObject().getAsJsonObject("value"), values);
+                }
+            } else if (FieldType.getEnum(typeName) != null) {
+                values.add(new Value(typeName, value));
+            }
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream is = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int n = is.read(data, offset, data.length - offset);
+                if (n < 0) {
+                    break;
+                }
+                offset += n;
+            }
+        } finally {
+            is.close();
+        }
+        return data;
+    }
+
+    /**
+     * Generates a response of the records with the fields of a typical
+     * application.
+     */
+    private static String generate(int count) {
+        JsonArray records = new JsonArray();
+        for (int i = 1; i <= count; i++) {
+            JsonObject record = new JsonObject();
+            record.add("$id", field("__ID__", string(Integer.toString(i))));
+            record.add("$revision", field("__REVISION__", string(Integer.toString(i % 7 + 1))));
+            record.add("Record_number", field("RECORD_NUMBER", string(Integer.toString(i))));
+            record.add("Title", field("SINGLE_LINE_TEXT", string("Title of the record " + i)));
+            record.add("Description", field("MULTI_LINE_TEXT",
+                    string("The description of the record " + i + ".\nIt has two lines.")));
+            record.add("Amount", field("NUMBER", string(Integer.toString(i * 100))));
+            record.add("Status", field("DROP_DOWN", string(i % 2 == 0 ? "Open" : "Closed")));
+            record.add("Due", field("DATE", string("2013-10-" + (i % 28 + 1 < 10 ? "0" : "")
+                    + (i % 28 + 1))));
+            record.add("Created_datetime", field("CREATED_TIME", string("2013-10-01T09:00:00Z")));
+            record.add("Updated_datetime", field("UPDATED_TIME", string("2013-10-02T09:00:00Z")));
+            record.add("Created_by", field("CREATOR", user(i)));
+            record.add("Updated_by", field("MODIFIER", user(i + 1)));
+            JsonArray tags = new JsonArray();
+            tags.add(string("red"));
+            tags.add(string("green"));
+            record.add("Tags", field("CHECK_BOX", tags));
+            JsonArray users = new JsonArray();
+            users.add(user(i));
+            users.add(user(i + 2));
+            record.add("Assignees", field("USER_SELECT", users));
+            JsonArray files = new JsonArray();
+            files.add(file(i));
+            record.add("Attachment", field("FILE", files));
+            JsonArray rows = new JsonArray();
+            for (int j = 0; j < 3; j++) {
+                JsonObject cells = new JsonObject();
+                cells.add("Item", field("SINGLE_LINE_TEXT", string("Item " + j)));
+                cells.add("Quantity", field("NUMBER", string(Integer.toString(j + 1))));
+                cells.add("Owner", field("USER_SELECT", users));
+                JsonObject row = new JsonObject();
+                row.add("id", string(Integer.toString(i * 10 + j)));
+                row.add("value", cells);
+                rows.add(row);
+            }
+            record.add("Items", field("SUBTABLE", rows));
+            records.add(record);
+        }
+        JsonObject root = new JsonObject();
+        root.add("records", records);
+        root.add("totalCount", string(Integer.toString(count)));
+        return root.toString();
+    }
+
+    private static JsonObject field(String type, JsonElement value) {
+        JsonObject field = new JsonObject();
+        field.add("type", string(type));
+        field.add("value", value);
+        return field;
+    }
+
+    private static JsonElement string(String value) {
+        return new JsonPrimitive(value);
+    }
+
+    private static JsonObject user(int i) {
+        JsonObject user = new JsonObject();
+        user.add("code", string("user" + i));
+        user.add("name", string("User " + i));
+        return user;
+    }
+
+    private static JsonObject file(int i) {
+        JsonObject file = new JsonObject();
+        file.add("contentType", string("image/png"));
+        file.add("fileKey", string(String.format("%032x", i)));
+        file.add("name", string("image" + i + ".png"));
+        file.add("size", string(Integer.toString(1024 + i)));
+        return file;
+    }
+}
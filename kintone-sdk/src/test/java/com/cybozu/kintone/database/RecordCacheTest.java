@@ -0,0 +1,133 @@
+//   Copyright 2013 Cybozu
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.cybozu.kintone.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RecordCacheTest {
+
+    private static Record record(long id, long revision, String text) {
+        Record record = new Record(id, revision);
+        record.setString("text", text);
+        record.setString("other", "o" + id);
+        return record;
+    }
+
+    @Test
+    public void getReturnsCopies() throws Exception {
+        RecordCache cache = new RecordCache();
+        Record record = record(1, 1, "a");
+        cache.put(1, record, 10);
+
+        record.getField("text").setValue("changed by the caller");
+        Record got = cache.get(1, 1);
+        assertEquals("a", got.getString("text"));
+
+        got.getField("text").setValue("changed again");
+        got.setString("added", "x");
+        Record again = cache.get(1, 1);
+        assertEquals("a", again.getString("text"));
+        assertFalse(again.hasField("added"));
+    }
+
+    @Test
+    public void getCopiesListValues() throws Exception {
+        RecordCache cache = new RecordCache();
+        Record row = new Record();
+        row.setString("item", "a");
+        Record record = record(1, 1, "a");
+        record.setSubtable("table", new ArrayList<Record>(Arrays.asList(row)));
+        record.setUsers("users", Arrays.asList("user1"));
+        cache.put(1, record, 10);
+
+        Record got = cache.get(1, 1);
+        got.getSubtable("table").get(0).setString("item", "changed");
+        got.getSubtable("table").add(new Record());
+        got.getUsers("users").get(0).setCode("changed");
+
+        Record again = cache.get(1, 1);
+        assertEquals(1, again.getSubtable("table").size());
+        assertEquals("a", again.getSubtable("table").get(0).getString("item"));
+        assertEquals("user1", again.getUsers("users").get(0).getCode());
+    }
+
+    @Test
+    public void getCopiesIndexedRecords() throws Exception {
+        RecordCache cache = new RecordCache();
+        Record source = new Record(1, 1);
+        source.setString("text", "a");
+        source.setUsers("users", Arrays.asList("user1"));
+        RecordSchema schema = RecordSchema.of(source);
+        Object[] values = new Object[schema.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = source.getField(schema.getName(i)).getValue();
+        }
+        cache.put(1, new IndexedRecord(schema, values, 1, 1), 10);
+
+        IndexedRecord got = (IndexedRecord) cache.get(1, 1);
+        assertSame(schema, got.getSchema());
+        got.getUsers("users").get(0).setCode("changed");
+
+        assertEquals("user1", cache.get(1, 1).getUsers("users").get(0).getCode());
+        assertEquals("a", cache.get(1, 1).getString("text"));
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        RecordCache cache = new RecordCache();
+        cache.put(1, record(1, 1, "a"), 10);
+        cache.put(1, record(2, 1, "b"), 10);
+        cache.put(2, record(1, 1, "c"), 10);
+
+        cache.invalidate(1, 1);
+        assertNull(cache.get(1, 1));
+        assertNotNull(cache.get(1, 2));
+
+        cache.invalidateApp(1);
+        assertNull(cache.get(1, 2));
+        assertEquals("c", cache.get(2, 1).getString("text"));
+        assertEquals(1, cache.size());
+        assertEquals(10, cache.getBytes());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        RecordCache cache = new RecordCache(2, 1000);
+        cache.put(1, record(1, 1, "a"), 10);
+        cache.put(1, record(2, 1, "b"), 10);
+        cache.get(1, 1);
+        cache.put(1, record(3, 1, "c"), 10);
+
+        assertNotNull(cache.get(1, 1));
+        assertNull(cache.get(1, 2));
+        assertNotNull(cache.get(1, 3));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void evictsBeyondMaxBytes() throws Exception {
+        RecordCache cache = new RecordCache(100, 25);
+        cache.put(1, record(1, 1, "a"), 10);
+        cache.put(1, record(2, 1, "b"), 10);
+        cache.put(1, record(3, 1, "c"), 10);
+
+        assertNull(cache.get(1, 1));
+        assertEquals(20, cache.getBytes());
+    }
+}